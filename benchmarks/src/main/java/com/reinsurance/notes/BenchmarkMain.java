@@ -0,0 +1,25 @@
+package com.reinsurance.notes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of {@code benchmarks.jar}: the regular JMH command line, but results are written as JSON
+ * ({@code jmh-result.json}) unless {@code -rf}/{@code -rff} are given, so builds can be compared.
+ *
+ * The benchmarks live in {@code com.reinsurance.notes}, not a package of their own: the classes they
+ * measure are package-private, and opening them up only for the benchmarks would widen the tool's API.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        if (!jmhArgs.contains("-rf"))  jmhArgs.addAll(List.of("-rf", "json"));
+        if (!jmhArgs.contains("-rff")) jmhArgs.addAll(List.of("-rff", "jmh-result.json"));
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,62 @@
+package com.reinsurance.notes;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The debit and credit calculation block ({@link PremiumEngine}). {@code batchSize = 1} is how the Excel
+ * path calls it, one row at a time; larger batches are the in-memory re-rating case.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CalculationBenchmark {
+
+    @Param({"1", "1000", "1000000"})
+    int batchSize;
+
+    private PremiumEngine.MainBatch main;
+    private PremiumEngine.CreditBatch credit;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rnd = new Random(42);
+        main   = new PremiumEngine.MainBatch(batchSize);
+        credit = new PremiumEngine.CreditBatch(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            main.sumInsured[i] = 1_000_000 + rnd.nextInt(500_000_000);
+            main.cedentRate[i] = 0.05 + rnd.nextInt(20) / 100.0;
+            main.reinsRate[i]  = i % 3 == 0 ? 0 : 0.04 + rnd.nextInt(10) / 100.0;
+            main.share[i]      = 5 + rnd.nextInt(30);
+            main.brokerage[i]  = rnd.nextInt(15);
+            main.cedingPct[i]  = rnd.nextInt(3) * 5;
+
+            credit.sumInsured[i]    = main.sumInsured[i];
+            credit.cedentRate[i]    = main.cedentRate[i];
+            credit.mainReinsRate[i] = main.reinsRate[i];
+            credit.mainBrokerage[i] = main.brokerage[i];
+            credit.mainCedingPct[i] = main.cedingPct[i];
+            credit.reinsRate[i]     = i % 2 == 0 ? 0 : 0.07;
+            credit.share[i]         = 1 + rnd.nextInt(10);
+            credit.brokerage[i]     = i % 3 == 0 ? 0 : 10;
+            credit.cedingPct[i]     = i % 4 == 0 ? 0 : 2.5;
+        }
+    }
+
+    @Benchmark
+    public double[] calculateMain() {
+        PremiumEngine.calculateMain(main, 0, batchSize);
+        return main.netPremiumToYou;
+    }
+
+    @Benchmark
+    public double[] calculateCredit() {
+        PremiumEngine.calculateCredit(credit, 0, batchSize);
+        return credit.netPayable;
+    }
+}
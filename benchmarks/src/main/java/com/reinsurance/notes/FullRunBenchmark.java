@@ -0,0 +1,101 @@
+package com.reinsurance.notes;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A complete {@link BrokerDebitCreditGenerator#run} over a synthetic workbook: load, calculate, one
+ * debit note per row plus {@code fanOut} credit notes, and the workbook save.
+ *
+ * Every invocation starts from an unprocessed copy of the workbook and an empty output folder. Generator
+ * options (e.g. {@code -p options="--threads=4 --streaming"}) are passed through; console output is
+ * discarded while the run is timed. Templates stay cached between invocations, as they would in one
+ * long batch. A run that throws, fails a note or issues fewer debit notes than rows fails the benchmark
+ * instead of being timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FullRunBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int rows;
+
+    @Param("2")
+    int fanOut;
+
+    @Param("")
+    String options;
+
+    private File dir;
+    private File pristine;
+    private File workbook;
+    private RunOptions opts;
+
+    private PrintStream savedOut;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("notes-bench").toFile();
+        workbook = SyntheticWorkbooks.writeRunDirectory(dir, rows, fanOut);
+        pristine = new File(dir, "pristine.xlsx");
+        Files.copy(workbook.toPath(), pristine.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        List<String> list = new ArrayList<>();
+        list.add("--no-open");
+        for (String opt : options.trim().split("\\s+")) {
+            if (!opt.isEmpty()) list.add(opt);
+        }
+        opts = RunOptions.parse(list.toArray(new String[0]));
+    }
+
+    @Setup(Level.Invocation)
+    public void resetWorkbook() throws IOException {
+        File resources = workbook.getParentFile();
+        SyntheticWorkbooks.deleteRecursively(new File(resources, "output"));
+        for (File f : resources.listFiles()) {
+            if (f.getName().startsWith(SyntheticWorkbooks.WORKBOOK) || f.getName().endsWith("-results.xlsx")) f.delete();
+        }
+        Files.copy(pristine.toPath(), workbook.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        savedOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Invocation)
+    public void restoreConsole() {
+        System.setOut(savedOut);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticWorkbooks.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public RunMetrics run() throws Exception {
+        File resources = workbook.getParentFile();
+        RunMetrics metrics = BrokerDebitCreditGenerator.run(opts, workbook.getPath(),
+                new File(resources, SyntheticWorkbooks.DEBIT_TEMPLATE).getPath(),
+                new File(resources, SyntheticWorkbooks.CREDIT_TEMPLATE).getPath(),
+                new File(resources, "output").getPath() + File.separator);
+        long failures = metrics.get(RunMetrics.Counter.FAILURES);
+        long debitNotes = metrics.get(RunMetrics.Counter.DEBIT_NOTES);
+        if (failures > 0 || debitNotes != rows) {
+            throw new IllegalStateException(failures + " failed notes, " + debitNotes + " of " + rows + " debit notes issued");
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,60 @@
+package com.reinsurance.notes;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One debit or credit note: filling the template and writing the .docx, as the generator does per row.
+ * Each invocation overwrites the same output file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NoteRenderBenchmark {
+
+    private File dir;
+    private String debitTemplate;
+    private String creditTemplate;
+    private NoteOutput output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("notes-bench").toFile();
+        SyntheticWorkbooks.writeTemplates(dir);
+        debitTemplate  = new File(dir, SyntheticWorkbooks.DEBIT_TEMPLATE).getPath();
+        creditTemplate = new File(dir, SyntheticWorkbooks.CREDIT_TEMPLATE).getPath();
+        output = new NoteOutput(dir.getPath() + File.separator + "output" + File.separator, false,
+                NoteOutput.Format.DOCX, new RunMetrics());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticWorkbooks.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void generateDebitNote() throws IOException {
+        BrokerDebitCreditGenerator.generateDebitNote(
+                debitTemplate, output, "RI_25-26_BENCH_D1", "USD",
+                "RI/25-26/BENCH/D1", "05-Nov-2025", "Property All Risk",
+                "Insured 1 Pvt Ltd", "Cedent 1 Insurance Ltd", "18-09-2025 To 17-09-2026",
+                183629631.02, 0.1, 183629.63102, 13.0, 23871.8520326, 23871.8520326);
+    }
+
+    @Benchmark
+    public void generateCreditNote() throws IOException {
+        BrokerDebitCreditGenerator.generateCreditNote(
+                creditTemplate, output, "RI_25-26_BENCH_C1-0", "USD",
+                "RI/25-26/BENCH/C1-0", "05-Nov-2025", "Property All Risk",
+                "Insured 1 Pvt Ltd", "Cedent 1 Insurance Ltd", "Reinsurer 0 Re",
+                "Office Park 0\nLusaka, Zambia", "18-09-2025 To 17-09-2026",
+                183629631.02, 0.07, 128540.741714, 5.5, 7069.74079427, 706.974079427, 6715.89375456);
+    }
+}
@@ -0,0 +1,147 @@
+package com.reinsurance.notes;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Generates benchmark inputs: a calculation workbook laid out like {@code DebitNoteCalculations.xlsx}
+ * and minimal debit/credit Word templates with the 14-row value table and the "To," paragraph.
+ *
+ * Data is deterministic (fixed seed) so runs of different builds see the same workbook. Every main row
+ * is complete and unprocessed, and each debit note gets {@code fanOut} credit rows.
+ */
+final class SyntheticWorkbooks {
+
+    static final String WORKBOOK        = "DebitNoteCalculations.xlsx";
+    static final String DEBIT_TEMPLATE  = "DebitNoteTemplate.docx";
+    static final String CREDIT_TEMPLATE = "CreditNoteTemplate.docx";
+
+    private static final String[] MAIN_HEADERS = {
+            "Debit Note No.", "Document Date", "Interest / Risk Description", "Insured", "Reinsured", "Period",
+            "Sum Insured (SI)", "Cedent Rate (%)", "Reinsurance Rate (%)", "Share (%)", "Brokerage (%)",
+            "Cedent Gross Premium (100%)", "Cedent Share Premium", "Reinsurer Gross Premium (100%)",
+            "Reinsurer Share Premium", "Ceding Commission (%)", "Ceding Commission (Amount)",
+            "Gross Brokerage Amount", "Net Brokarage", "Net Premium Payable from You",
+            "Net Premium Payable To You", "Processed"
+    };
+
+    private static final String[] CREDIT_HEADERS = {
+            "Debit Note No.", "Credit Note No.", "Reinsured Name", "Reinsurer Name", "Reinsurer Address",
+            "Reinsurer Share (%)", "Reinsurance Rate (%)", "Brokerage (%)", "Ceding Commission (%)", "Processed",
+            "Fac Premium (100%)", "Share Premium", "Ceding Commission (Amount)", "Brokerage (Amount)",
+            "Net Premium Payable To You"
+    };
+
+    private static final String[] TEMPLATE_LABELS = {
+            "Debit Note No.", "Date", "", "Interest", "Insured", "Reinsured", "Period", "Sum Insured",
+            "Rate", "Fac Premium 100%", "Share", "Share Premium", "Brokerage", "Net Premium"
+    };
+
+    private SyntheticWorkbooks() {
+    }
+
+    /** Lays out {@code dir/resources/} the way the generator expects when run from {@code dir}. */
+    static File writeRunDirectory(File dir, int rows, int fanOut) throws IOException {
+        File resources = new File(dir, "resources");
+        if (!resources.exists()) resources.mkdirs();
+        writeTemplates(resources);
+        File workbook = new File(resources, WORKBOOK);
+        writeWorkbook(workbook, rows, fanOut);
+        return workbook;
+    }
+
+    static void writeWorkbook(File file, int rows, int fanOut) throws IOException {
+        Random rnd = new Random(42);
+        // close() also deletes the temporary sheet files
+        try (SXSSFWorkbook wb = new SXSSFWorkbook(100)) {
+            Sheet main   = wb.createSheet("Sheet1");
+            Sheet credit = wb.createSheet("CreditNoteDetails");
+            writeHeader(main, MAIN_HEADERS);
+            writeHeader(credit, CREDIT_HEADERS);
+
+            int cr = 1;
+            for (int r = 1; r <= rows; r++) {
+                String debitNoteNo = "RI/25-26/BENCH/D" + r;
+                Row row = main.createRow(r);
+                row.createCell(0).setCellValue(debitNoteNo);
+                row.createCell(1).setCellValue("05-Nov-2025");
+                row.createCell(2).setCellValue("Property All Risk");
+                row.createCell(3).setCellValue("Insured " + r + " Pvt Ltd");
+                row.createCell(4).setCellValue("Cedent " + (r % 25) + " Insurance Ltd");
+                row.createCell(5).setCellValue("18-09-2025 To 17-09-2026");
+                row.createCell(6).setCellValue(1_000_000 + rnd.nextInt(500_000_000));
+                row.createCell(7).setCellValue(0.05 + rnd.nextInt(20) / 100.0);
+                row.createCell(8).setCellValue(r % 3 == 0 ? 0 : 0.04 + rnd.nextInt(10) / 100.0);
+                row.createCell(9).setCellValue(5 + rnd.nextInt(30));
+                row.createCell(10).setCellValue(rnd.nextInt(15));
+                row.createCell(15).setCellValue(rnd.nextInt(3) * 5);
+
+                for (int k = 0; k < fanOut; k++) {
+                    Row c = credit.createRow(cr++);
+                    c.createCell(0).setCellValue(debitNoteNo);
+                    c.createCell(1).setCellValue("RI/25-26/BENCH/C" + r + "-" + k);
+                    c.createCell(2).setCellValue("Cedent " + (r % 25) + " Insurance Ltd");
+                    c.createCell(3).setCellValue("Reinsurer " + (k % 40) + " Re");
+                    c.createCell(4).setCellValue("Office Park " + k + "\nLusaka, Zambia");
+                    c.createCell(5).setCellValue(1 + rnd.nextInt(10));
+                    c.createCell(6).setCellValue(k % 2 == 0 ? 0 : 0.07);
+                    c.createCell(7).setCellValue(k % 3 == 0 ? 0 : 10);
+                    c.createCell(8).setCellValue(k % 4 == 0 ? 0 : 2.5);
+                }
+            }
+
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                wb.write(out);
+            }
+        }
+    }
+
+    static void writeTemplates(File dir) throws IOException {
+        writeTemplate(new File(dir, DEBIT_TEMPLATE), "DEBIT NOTE");
+        writeTemplate(new File(dir, CREDIT_TEMPLATE), "CREDIT NOTE");
+    }
+
+    private static void writeTemplate(File file, String title) throws IOException {
+        try (XWPFDocument doc = new XWPFDocument()) {
+            doc.createParagraph().createRun().setText(title);
+            XWPFParagraph to = doc.createParagraph();
+            to.createRun().setText("To,");
+            to.createRun().addBreak();
+            to.createRun().setText("Reinsurer");
+
+            XWPFTable table = doc.createTable(NoteTemplate.SLOT_ROWS, 3);
+            for (int r = 0; r < NoteTemplate.SLOT_ROWS; r++) {
+                table.getRow(r).getCell(0).setText(TEMPLATE_LABELS[r]);
+                table.getRow(r).getCell(1).setText(":");
+                table.getRow(r).getCell(NoteTemplate.SLOT_COL).setText("");
+            }
+            doc.createParagraph().createRun().setText("Authorised Signatory");
+
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                doc.write(out);
+            }
+        }
+    }
+
+    private static void writeHeader(Sheet sheet, String[] headers) {
+        Row row = sheet.createRow(0);
+        for (int c = 0; c < headers.length; c++) row.createCell(c).setCellValue(headers[c]);
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,94 @@
+package com.reinsurance.notes;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Excel side of a run: loading the workbook into POI, reading the CreditNoteDetails header, and the
+ * {@code getString}/{@code getDouble} cell access the main loop does for every row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class WorkbookBenchmark {
+
+    @Param({"1000", "10000"})
+    int rows;
+
+    @Param("2")
+    int fanOut;
+
+    private File dir;
+    private File workbookFile;
+    private XSSFWorkbook workbook;
+    private Sheet mainSheet;
+    private Sheet creditSheet;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("notes-bench").toFile();
+        workbookFile = new File(dir, SyntheticWorkbooks.WORKBOOK);
+        SyntheticWorkbooks.writeWorkbook(workbookFile, rows, fanOut);
+
+        try (FileInputStream fis = new FileInputStream(workbookFile)) {
+            workbook = new XSSFWorkbook(fis);
+        }
+        mainSheet   = workbook.getSheetAt(0);
+        creditSheet = workbook.getSheet("CreditNoteDetails");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        workbook.close();
+        SyntheticWorkbooks.deleteRecursively(dir);
+    }
+
+    /** Same load as the generator's default (DOM) path. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int loadWorkbook() throws IOException {
+        try (FileInputStream fis = new FileInputStream(workbookFile);
+             XSSFWorkbook wb = new XSSFWorkbook(fis)) {
+            return wb.getSheetAt(0).getLastRowNum();
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Map<String,Integer> readHeaderMap() {
+        return BrokerDebitCreditGenerator.readHeaderMap(creditSheet);
+    }
+
+    /** Text columns 0-5 of every main row. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void getStringAllRows(Blackhole bh) {
+        for (int r = 1; r <= rows; r++) {
+            Row row = mainSheet.getRow(r);
+            for (int c = 0; c <= 5; c++) bh.consume(BrokerDebitCreditGenerator.getString(row, c));
+        }
+    }
+
+    /** Numeric columns 6-10 and 15 of every main row. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void getDoubleAllRows(Blackhole bh) {
+        for (int r = 1; r <= rows; r++) {
+            Row row = mainSheet.getRow(r);
+            for (int c = 6; c <= 10; c++) bh.consume(BrokerDebitCreditGenerator.getDouble(row, c));
+            bh.consume(BrokerDebitCreditGenerator.getDouble(row, 15));
+        }
+    }
+}
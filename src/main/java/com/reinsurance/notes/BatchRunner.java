@@ -0,0 +1,305 @@
+package com.reinsurance.notes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Batch mode ({@code --batch=DIR|LIST}): several workbooks, typically one per cedent and currency,
+ * processed as independent shards in one JVM instead of one launch after another.
+ *
+ * The batch is either a list file with one {@code workbook[,currency[,cedent]]} per line (relative
+ * paths resolve against the list's folder, {@code #} starts a comment) or a folder: its
+ * {@code batch.csv} when present, otherwise every {@code .xlsx} in it. A missing currency falls back to
+ * {@code --currency}, a missing cedent to the workbook's file name.
+ *
+ * Each shard is a normal run of its workbook (updated in place, own {@code .metrics.json}) writing its
+ * notes to {@code output/<workbook>/}. At most {@code --shards} workbooks run at the same time;
+ * {@code --threads} still applies to the notes within each. A failed shard does not stop the others.
+ * The batch summary lists every shard and the totals per cedent and currency; amounts in different
+ * currencies are never added together.
+ */
+final class BatchRunner {
+
+    static final String BATCH_LIST = "batch.csv";
+    static final String BATCH_SUMMARY = "batch-summary.json";
+
+    /** One workbook of the batch and, once it ran, its outcome. */
+    static final class Shard {
+        final String workbook;
+        final String currency;
+        final String cedent;
+        String outputFolder;
+        RunMetrics metrics;
+        String error;
+        long elapsedMillis;
+
+        Shard(String workbook, String currency, String cedent) {
+            this.workbook = workbook;
+            this.currency = currency;
+            this.cedent = cedent;
+        }
+    }
+
+    private BatchRunner() {}
+
+    /** Runs every workbook of {@code opts.batchPath} and writes the batch summary. */
+    static void run(RunOptions opts, String templatePath, String creditTemplatePath, String outputFolder) {
+        File batch = new File(opts.batchPath).getAbsoluteFile();
+        System.out.println("==============================================");
+        System.out.println("   Reinsurance Debit & Credit Note Generator");
+        System.out.println("   Batch mode");
+        System.out.println("==============================================");
+        System.out.println("Batch: " + batch);
+        System.out.println("Debit Template: " + templatePath);
+        System.out.println("Credit Template: " + creditTemplatePath);
+        System.out.println("Output Folder: " + outputFolder);
+
+        List<Shard> shards;
+        try {
+            shards = readBatch(batch, opts.currency);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("❌ Unable to read batch " + batch + ": " + e.getMessage());
+            return;
+        }
+        if (shards.isEmpty()) {
+            System.out.println("⚠️ No workbooks in " + batch);
+            return;
+        }
+        assignOutputFolders(shards, outputFolder);
+        System.out.println("Workbooks: " + shards.size() + " (" + Math.min(opts.shards, shards.size()) + " at a time)");
+        System.out.println("Processing data...\n");
+
+        Instant startedAt = Instant.now();
+        long start = System.nanoTime();
+        ExecutorService pool = WorkerPools.newPool("shard", Math.min(opts.shards, shards.size()));
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (Shard shard : shards) {
+                running.add(pool.submit(() -> runShard(opts, shard, templatePath, creditTemplatePath)));
+            }
+            for (Future<?> f : running) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    // runShard records its own failures; anything else is a bug worth seeing
+                    e.getCause().printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("❌ Batch interrupted");
+        } finally {
+            pool.shutdown();
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        File summary = new File(opts.metricsPath != null ? opts.metricsPath : defaultSummaryPath(batch));
+        try {
+            writeSummary(summary, batch.getPath(), startedAt, elapsedMillis, shards);
+        } catch (IOException e) {
+            System.err.println("⚠️ Unable to write batch summary " + summary + ": " + e.getMessage());
+        }
+
+        int failed = 0;
+        for (Shard shard : shards) if (shard.error != null) failed++;
+        System.out.println("\n📦 Batch done: " + (shards.size() - failed) + " of " + shards.size()
+                + " workbooks processed in " + elapsedMillis + " ms; summary: " + summary.getPath());
+        if (opts.openOutputFolder) BrokerDebitCreditGenerator.openOutputFolder(outputFolder);
+    }
+
+    private static void runShard(RunOptions opts, Shard shard, String templatePath, String creditTemplatePath) {
+        String name = new File(shard.workbook).getName();
+        System.out.println("▶️ " + name + " (" + shard.cedent + ", " + shard.currency + ")");
+        long start = System.nanoTime();
+        try {
+            shard.metrics = BrokerDebitCreditGenerator.run(opts.forShard(shard.currency), shard.workbook,
+                    templatePath, creditTemplatePath, shard.outputFolder);
+        } catch (Exception e) {
+            shard.error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            System.err.println("❌ " + name + " failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+        shard.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+    }
+
+    // ---------- Batch definition ----------
+
+    static List<Shard> readBatch(File batch, String defaultCurrency) throws IOException {
+        if (batch.isDirectory()) {
+            File list = new File(batch, BATCH_LIST);
+            if (list.isFile()) return readList(list, defaultCurrency);
+
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> dir = Files.newDirectoryStream(batch.toPath(), "*.xlsx")) {
+                for (Path file : dir) {
+                    String name = file.getFileName().toString();
+                    // Excel lock files (~$Book.xlsx) and streaming results are not input workbooks
+                    if (name.startsWith("~$") || name.startsWith(".") || name.endsWith("-results.xlsx")) continue;
+                    files.add(file);
+                }
+            }
+            files.sort(null);
+            List<Shard> shards = new ArrayList<>();
+            for (Path file : files) shards.add(new Shard(file.toString(), defaultCurrency, baseName(file.toFile())));
+            return shards;
+        }
+        if (!batch.isFile()) throw new IOException("No such folder or list file");
+        return readList(batch, defaultCurrency);
+    }
+
+    private static List<Shard> readList(File list, String defaultCurrency) throws IOException {
+        List<Shard> shards = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        int lineNo = 0;
+        for (String line : Files.readAllLines(list.toPath(), StandardCharsets.UTF_8)) {
+            lineNo++;
+            int hash = line.indexOf('#');
+            if (hash >= 0) line = line.substring(0, hash);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            String[] fields = line.split(",", -1);
+            String path = fields[0].trim();
+            if (lineNo == 1 && path.equalsIgnoreCase("workbook")) continue; // header row
+
+            File workbook = new File(path);
+            if (!workbook.isAbsolute()) workbook = new File(list.getParentFile(), path);
+            if (!workbook.isFile()) {
+                throw new IllegalArgumentException(list.getName() + " line " + lineNo + ": workbook not found: " + workbook);
+            }
+            // two shards updating the same workbook would overwrite each other's flags
+            if (!seen.add(workbook.getCanonicalPath())) {
+                throw new IllegalArgumentException(list.getName() + " line " + lineNo + ": workbook listed twice: " + workbook);
+            }
+
+            String currency = (fields.length > 1 && !fields[1].trim().isEmpty())
+                    ? RunOptions.parseCurrency(fields[1]) : defaultCurrency;
+            String cedent = (fields.length > 2 && !fields[2].trim().isEmpty())
+                    ? fields[2].trim() : baseName(workbook);
+            shards.add(new Shard(workbook.getPath(), currency, cedent));
+        }
+        return shards;
+    }
+
+    // output/<workbook>/, with a suffix when two workbooks in different folders share a name
+    private static void assignOutputFolders(List<Shard> shards, String outputFolder) {
+        Set<String> used = new HashSet<>();
+        for (Shard shard : shards) {
+            String name = NoteFormats.fileName(baseName(new File(shard.workbook)));
+            String folder = name;
+            for (int n = 2; !used.add(folder.toLowerCase()); n++) folder = name + "~" + n;
+            shard.outputFolder = outputFolder + folder + File.separator;
+        }
+    }
+
+    private static String baseName(File workbook) {
+        String name = workbook.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private static String defaultSummaryPath(File batch) {
+        return batch.isDirectory() ? new File(batch, BATCH_SUMMARY).getPath() : batch.getPath() + ".summary.json";
+    }
+
+    // ---------- Summary ----------
+
+    /** Totals of all shards with the same cedent and currency. */
+    private static final class Totals {
+        final String cedent;
+        final String currency;
+        int workbooks;
+        int failedWorkbooks;
+        long debitNotes;
+        long creditNotes;
+        long failures;
+        double debitNetPremium;
+        double creditNetPayable;
+
+        Totals(String cedent, String currency) {
+            this.cedent = cedent;
+            this.currency = currency;
+        }
+    }
+
+    static void writeSummary(File file, String batch, Instant startedAt, long elapsedMillis, List<Shard> shards)
+            throws IOException {
+        Map<String, Totals> totals = new LinkedHashMap<>();
+        StringBuilder json = new StringBuilder(4096);
+        json.append("{\n");
+        json.append("  \"batch\": \"").append(RunMetrics.escapeJson(batch)).append("\",\n");
+        json.append("  \"startedAt\": \"").append(startedAt).append("\",\n");
+        json.append("  \"elapsedMillis\": ").append(elapsedMillis).append(",\n");
+
+        json.append("  \"workbooks\": [\n");
+        for (int i = 0; i < shards.size(); i++) {
+            Shard s = shards.get(i);
+            Totals t = totals.computeIfAbsent(s.cedent.toLowerCase() + "\u0000" + s.currency,
+                    k -> new Totals(s.cedent, s.currency));
+            t.workbooks++;
+
+            json.append("    {\"workbook\": \"").append(RunMetrics.escapeJson(s.workbook)).append('"')
+                .append(", \"cedent\": \"").append(RunMetrics.escapeJson(s.cedent)).append('"')
+                .append(", \"currency\": \"").append(s.currency).append('"')
+                .append(", \"state\": \"").append(s.error == null ? "done" : "failed").append('"')
+                .append(", \"elapsedMillis\": ").append(s.elapsedMillis);
+            if (s.error != null) {
+                t.failedWorkbooks++;
+                json.append(", \"error\": \"").append(RunMetrics.escapeJson(s.error)).append('"');
+            }
+            if (s.metrics != null) {
+                RunMetrics m = s.metrics;
+                t.debitNotes       += m.get(RunMetrics.Counter.DEBIT_NOTES);
+                t.creditNotes      += m.get(RunMetrics.Counter.CREDIT_NOTES);
+                t.failures         += m.get(RunMetrics.Counter.FAILURES);
+                t.debitNetPremium  += m.get(RunMetrics.Amount.DEBIT_NET_PREMIUM);
+                t.creditNetPayable += m.get(RunMetrics.Amount.CREDIT_NET_PAYABLE);
+                json.append(", \"debitNotes\": ").append(m.get(RunMetrics.Counter.DEBIT_NOTES))
+                    .append(", \"creditNotes\": ").append(m.get(RunMetrics.Counter.CREDIT_NOTES))
+                    .append(", \"failures\": ").append(m.get(RunMetrics.Counter.FAILURES))
+                    .append(", \"debitNetPremium\": ").append(RunMetrics.jsonAmount(m.get(RunMetrics.Amount.DEBIT_NET_PREMIUM)))
+                    .append(", \"creditNetPayable\": ").append(RunMetrics.jsonAmount(m.get(RunMetrics.Amount.CREDIT_NET_PAYABLE)));
+            }
+            json.append('}').append(i < shards.size() - 1 ? ",\n" : "\n");
+        }
+        json.append("  ],\n");
+
+        json.append("  \"totals\": [\n");
+        int i = 0;
+        for (Totals t : totals.values()) {
+            json.append("    {\"cedent\": \"").append(RunMetrics.escapeJson(t.cedent)).append('"')
+                .append(", \"currency\": \"").append(t.currency).append('"')
+                .append(", \"workbooks\": ").append(t.workbooks)
+                .append(", \"failedWorkbooks\": ").append(t.failedWorkbooks)
+                .append(", \"debitNotes\": ").append(t.debitNotes)
+                .append(", \"creditNotes\": ").append(t.creditNotes)
+                .append(", \"failures\": ").append(t.failures)
+                .append(", \"debitNetPremium\": ").append(RunMetrics.jsonAmount(t.debitNetPremium))
+                .append(", \"creditNetPayable\": ").append(RunMetrics.jsonAmount(t.creditNetPayable))
+                .append('}').append(++i < totals.size() ? ",\n" : "\n");
+        }
+        json.append("  ]\n");
+        json.append("}\n");
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write(json.toString());
+        }
+    }
+}
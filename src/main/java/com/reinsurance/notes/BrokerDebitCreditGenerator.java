@@ -1,20 +1,45 @@
 package com.reinsurance.notes;
 
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.apache.poi.xwpf.usermodel.*;
-import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 
 import java.io.*;
-import java.time.LocalDate;
+import java.nio.file.NoSuchFileException;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class BrokerDebitCreditGenerator {
 
     public static void main(String[] args) {
 
+        RunOptions opts;
+        try {
+            opts = RunOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ " + e.getMessage());
+            RunOptions.printUsage();
+            return;
+        }
+
+        if (opts.dumpResultsPath != null) {
+            try {
+                ResultsFile.dump(new File(opts.dumpResultsPath), opts.verbose, System.out);
+            } catch (NoSuchFileException e) {
+                System.err.println("❌ Results file not found: " + opts.dumpResultsPath);
+                System.exit(1);
+            } catch (IOException e) {
+                System.err.println("❌ " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
         String basePath = System.getProperty("user.dir");
 
         String excelFilePath     = basePath + File.separator + "resources" + File.separator + "DebitNoteCalculations.xlsx";
@@ -22,14 +47,29 @@ public class BrokerDebitCreditGenerator {
         String creditTemplatePath= basePath + File.separator + "resources" + File.separator + "CreditNoteTemplate.docx";
         String outputFolder      = basePath + File.separator + "resources" + File.separator + "output" + File.separator;
 
-        File excelFile = new File(excelFilePath);
-        if (!excelFile.exists()) {
+        // the service and batch modes have no workbook of their own, so they go by the debit template instead
+        boolean service = opts.watchDir != null || opts.httpPort > 0 || opts.batchPath != null;
+        File probe = new File(service ? templatePath : excelFilePath);
+        if (!probe.exists()) {
             excelFilePath      = basePath + File.separator + "src" + File.separator + "main" + File.separator + "resources" + File.separator + "DebitNoteCalculations.xlsx";
             templatePath       = basePath + File.separator + "src" + File.separator + "main" + File.separator + "resources" + File.separator + "DebitNoteTemplate.docx";
             creditTemplatePath = basePath + File.separator + "src" + File.separator + "main" + File.separator + "resources" + File.separator + "CreditNoteTemplate.docx";
             outputFolder       = basePath + File.separator + "src" + File.separator + "main" + File.separator + "resources" + File.separator + "output" + File.separator;
         }
 
+        if (opts.watchDir != null) {
+            InboxWatcher.run(opts, templatePath, creditTemplatePath);
+            return;
+        }
+        if (opts.httpPort > 0) {
+            NoteHttpServer.run(opts, templatePath, creditTemplatePath);
+            return;
+        }
+        if (opts.batchPath != null) {
+            BatchRunner.run(opts, templatePath, creditTemplatePath, outputFolder);
+            return;
+        }
+
         System.out.println("==============================================");
         System.out.println("   Reinsurance Debit & Credit Note Generator");
         System.out.println("==============================================");
@@ -37,127 +77,267 @@ public class BrokerDebitCreditGenerator {
         System.out.println("Debit Template: " + templatePath);
         System.out.println("Credit Template: " + creditTemplatePath);
         System.out.println("Output Folder: " + outputFolder);
-        System.out.println("Processing data...\n");
+        if (opts.format != NoteOutput.Format.DOCX) {
+            System.out.println("Output Format: " + opts.format.name().toLowerCase());
+        }
+        if (!opts.currency.equals("USD")) {
+            System.out.println("Currency: " + opts.currency);
+        }
+        if (opts.threads != 1) {
+            System.out.println("Render Threads: " + (opts.threads == WorkerPools.VIRTUAL ? "virtual" : String.valueOf(opts.threads)));
+        }
+        System.out.println(opts.validate ? "Validating workbook...\n" : "Processing data...\n");
 
-        try (FileInputStream fis = new FileInputStream(excelFilePath);
-             Workbook wb = new XSSFWorkbook(fis)) {
+        try {
+            if (opts.validate) {
+                // a non-zero exit code lets scripts stop before a run when the workbook has errors
+                if (!WorkbookValidator.run(opts, excelFilePath)) System.exit(1);
+                return;
+            }
+            run(opts, excelFilePath, templatePath, creditTemplatePath, outputFolder);
+            if (opts.openOutputFolder) openOutputFolder(outputFolder);
+        } catch (FileNotFoundException e) {
+            System.err.println("❌ File not found! Please check folder structure:");
+            System.err.println("Expected Excel file at: " + excelFilePath);
+            if (opts.validate) System.exit(1);
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (opts.validate) System.exit(1);
+        }
+    }
 
-            Sheet mainSheet   = wb.getSheetAt(0);
-            Sheet creditSheet = wb.getSheet("CreditNoteDetails"); // optional
+    /**
+     * Processes one workbook: calculates every pending row, writes its notes into {@code outputFolder}
+     * and saves the flags. Used once by {@link #main}, once per job by {@link InboxWatcher} and once per
+     * workbook by {@link BatchRunner}.
+     */
+    static RunMetrics run(RunOptions opts, String excelFilePath, String templatePath, String creditTemplatePath,
+                          String outputFolder) throws Exception {
 
-            File outDir = new File(outputFolder);
-            if (!outDir.exists()) outDir.mkdirs();
+        RunMetrics metrics = new RunMetrics();
+        boolean verbose = opts.verbose;
+        long loadStart = RunMetrics.start();
+        if (opts.progressSeconds > 0) metrics.startProgress(opts.progressSeconds);
 
-            DateTimeFormatter df = DateTimeFormatter.ofPattern("dd-MMM-yyyy");
-            int mainProcessedCol = 21; // unchanged
+        try (NoteSource source = openSource(opts, excelFilePath);
+             NoteOutput output = openOutput(opts, outputFolder, metrics);
+             ResultsExport export = openExport(opts, excelFilePath);
+             NotePipeline pipeline = NotePipeline.forThreads(opts.threads)) {
 
-            for (int r = 1; r <= mainSheet.getLastRowNum(); r++) {
-                Row row = mainSheet.getRow(r);
-                if (row == null || isRowEmpty(row)) {
-                    System.out.println("⚠️ Skipping blank row " + r);
-                    continue;
-                }
+            int mainProcessedCol = 21; // unchanged
 
-                String processedFlag = getString(row, mainProcessedCol);
-                if (processedFlag.equalsIgnoreCase("Yes") || processedFlag.equalsIgnoreCase("Processed")) {
-                    System.out.println("⏩ Skipping main row " + r + " (already processed)");
-                    continue;
+            String debitTemplate  = templatePath;
+            String creditTemplate = creditTemplatePath;
+
+            // --- Credit rows: read header once and group rows by linked debit note (single pass) ---
+            Map<String,Integer> hdr = source.getCreditHeader();
+            Map<String,List<NoteRow>> creditRowsByDebit = indexCreditRows(source.getCreditRows(), hdr);
+            metrics.recordWorkbookLoad(loadStart);
+
+            // --- Optional sidecar index: skip unchanged rows by hash, re-issue changed ones ---
+            ProcessedIndex index = opts.useIndex ? ProcessedIndex.load(excelFilePath) : null;
+
+            // rows are read one at a time, so one-row batches are reused for every calculation
+            PremiumEngine.MainBatch   mainCalc   = new PremiumEngine.MainBatch(1);
+            PremiumEngine.CreditBatch creditCalc = new PremiumEngine.CreditBatch(1);
+
+            // --- Optional consolidation: credit rows collected per reinsurer, one statement each ---
+            CreditStatements statements = opts.consolidateCredits ? new CreditStatements(LocalDateTime.now()) : null;
+            String currency = opts.currency;
+
+            // credit rows issued in this run, claimed when submitted: their "Processed" flag is only set
+            // once the note is written, so a later main row with the same debit note no. must not take
+            // them again while a worker is still rendering them
+            Set<NoteRow> claimedCredits = Collections.newSetFromMap(new IdentityHashMap<>());
+
+            source.forEachMainRow((r, row) -> {
+                long readStart = RunMetrics.start();
+                metrics.increment(RunMetrics.Counter.ROWS_READ);
+                if (row == null || row.isEmpty()) {
+                    metrics.increment(RunMetrics.Counter.SKIPPED_BLANK);
+                    if (verbose) System.out.println("⚠️ Skipping blank row " + r);
+                    return;
                 }
 
-                // --- Inputs (main sheet stays index-based as in your code) ---
-                String debitNoteNo = getString(row, 0);
+                String debitNoteNo = row.getString(0);
                 if (debitNoteNo == null || debitNoteNo.isEmpty()) {
-                    debitNoteNo = "DN-" + String.format("%03d", r);
+                    debitNoteNo = NoteFormats.fallbackDebitNoteNo(r);
                 }
-
-                String docDate = getString(row, 1);
-                if (docDate == null || docDate.trim().isEmpty()) {
-                    docDate = LocalDate.now().format(df);
-                    setString(row, 1, docDate); // persist auto-date
+                List<NoteRow> linkedCredits = creditRowsByDebit.get(normalizeNoteNo(debitNoteNo));
+
+                String docDate = row.getString(1);
+                boolean autoDate = (docDate == null || docDate.trim().isEmpty());
+                if (autoDate) docDate = NoteFormats.today();
+
+                // --- "Processed" flag first; the optional index only re-issues or skips flagged rows ---
+                boolean processed = isProcessedFlag(row.getString(mainProcessedCol));
+                long checkedHash = 0L;
+                ProcessedIndex.Status status = ProcessedIndex.Status.UNKNOWN;
+                // a flagged row is hashed only if the workbook was edited since the last indexed run or a credit row is new
+                if (processed && index != null
+                        && (!index.isWorkbookUnchanged() || ProcessedIndex.hasUnflaggedCredits(linkedCredits, hdr))) {
+                    checkedHash = index.hashMain(row, docDate);
+                    status = index.checkMain(debitNoteNo, checkedHash);
+                    if (status == ProcessedIndex.Status.DUPLICATE) {
+                        System.out.println("⚠️ Debit note " + debitNoteNo + " is on more than one row; row " + r + " is not indexed");
+                    }
+                }
+                boolean creditsOnly = false; // debit unchanged, but some of its credit rows are new or changed
+                if (processed) {
+                    if (status == ProcessedIndex.Status.CHANGED) {
+                        System.out.println("🔁 Re-issuing main row " + r + " (" + debitNoteNo + "): inputs changed since it was processed");
+                    } else if (status == ProcessedIndex.Status.UNCHANGED
+                            && index.hasPendingCredits(linkedCredits, hdr, debitNoteNo, checkedHash)) {
+                        creditsOnly = true;
+                    } else {
+                        // unknown to the index: notes flagged outside this tool keep the flag semantics
+                        metrics.increment(RunMetrics.Counter.SKIPPED_PROCESSED);
+                        if (verbose) System.out.println("⏩ Skipping main row " + r + " (already processed)");
+                        return;
+                    }
                 }
 
-                String interest          = getString(row, 2);
-                String insured           = getString(row, 3);
-                String defaultReinsured  = getString(row, 4); // shows as "Reinsured" on debit note
-                String period            = getString(row, 5);
+                // --- Inputs (main sheet stays index-based as in your code) ---
+                if (autoDate) row.setString(1, docDate); // persist auto-date
+
+                String interest          = row.getString(2);
+                String insured           = row.getString(3);
+                String defaultReinsured  = row.getString(4); // shows as "Reinsured" on debit note
+                String period            = row.getString(5);
 
-                double SI             = getDouble(row, 6);
-                double cedentRate     = getDouble(row, 7);
-                double mainReinsRate  = getDouble(row, 8);
-                double share          = getDouble(row, 9);
-                double brokerage      = getDouble(row,10);
-                double cedingCommPct  = getDouble(row,15);
+                double SI             = row.getDouble(6);
+                double cedentRate     = row.getDouble(7);
+                double mainReinsRate  = row.getDouble(8);
+                double share          = row.getDouble(9);
+                double brokerage      = row.getDouble(10);
+                double cedingCommPct  = row.getDouble(15);
+                metrics.record(RunMetrics.Stage.EXCEL_READ, readStart);
 
                 if (SI == 0 || cedentRate == 0 || share == 0) {
-                    System.out.println("⚠️ Skipping incomplete main row " + r);
-                    continue;
+                    metrics.increment(RunMetrics.Counter.SKIPPED_INCOMPLETE);
+                    if (verbose) System.out.println("⚠️ Skipping incomplete main row " + r);
+                    return;
                 }
 
-                // --- Calculations (unchanged logic) ---
-                double grossPremiumCedent   = SI * (cedentRate / 100);
-                double sharePremiumCedent   = grossPremiumCedent * (share / 100);
-
-                double effectiveReinsRateMain = (mainReinsRate > 0) ? mainReinsRate : cedentRate;
-                double grossPremiumReinsMain  = SI * (effectiveReinsRateMain / 100);
-                double sharePremiumReinsMain  = grossPremiumReinsMain * (share / 100);
-
-                double cedingCommissionAmtMain = sharePremiumCedent * (cedingCommPct / 100);
-                double grossBrokerageMain      = sharePremiumReinsMain * (brokerage / 100);
-                double netBrokerageMain        = grossBrokerageMain / 2.0;
-
-                double netPremiumFromYou = sharePremiumCedent - cedingCommissionAmtMain;                 // debit (cedent)
-                double netPremiumToYou   = sharePremiumReinsMain - netBrokerageMain - cedingCommissionAmtMain; // credit (summary)
-
-                // --- Write back (same column indices) ---
-                setNumeric(row, 11, grossPremiumCedent);
-                setNumeric(row, 12, sharePremiumCedent);
-                setNumeric(row, 13, grossPremiumReinsMain);
-                setNumeric(row, 14, sharePremiumReinsMain);
-                setNumeric(row, 15, cedingCommPct);
-                setNumeric(row, 16, cedingCommissionAmtMain);
-                setNumeric(row, 17, grossBrokerageMain);
-                setNumeric(row, 18, netBrokerageMain);
-                setNumeric(row, 19, netPremiumFromYou);
-                setNumeric(row, 20, netPremiumToYou);
-                setString (row, mainProcessedCol, "Yes");
-
-                // --- Generate Debit Note (unchanged) ---
-                String safeFileName = debitNoteNo.replaceAll("[^a-zA-Z0-9-_]", "_");
-                generateDebitNote(
-                        templatePath,
-                        outputFolder + safeFileName + ".docx",
-                        debitNoteNo,
-                        docDate,
-                        interest,
-                        insured,
-                        defaultReinsured,
-                        period,
-                        SI,
-                        cedentRate,
-                        grossPremiumCedent,
-                        share,
-                        sharePremiumCedent,
-                        netPremiumFromYou
-                );
-                System.out.println("✅ Main Debit Note generated: " + debitNoteNo);
+                // a pending row is hashed once it is issued, to be recorded (and to find duplicate note numbers)
+                if (index != null && !processed) {
+                    checkedHash = index.hashMain(row, docDate);
+                    if (index.checkMain(debitNoteNo, checkedHash) == ProcessedIndex.Status.DUPLICATE) {
+                        System.out.println("⚠️ Debit note " + debitNoteNo + " is on more than one row; row " + r + " is not indexed");
+                    }
+                }
+                long debitHash = checkedHash;
+
+                // --- Calculations (unchanged logic, one-row batch) ---
+                long calcStart = RunMetrics.start();
+                mainCalc.sumInsured[0] = SI;
+                mainCalc.cedentRate[0] = cedentRate;
+                mainCalc.reinsRate[0]  = mainReinsRate;
+                mainCalc.share[0]      = share;
+                mainCalc.brokerage[0]  = brokerage;
+                mainCalc.cedingPct[0]  = cedingCommPct;
+                PremiumEngine.calculateMain(mainCalc, 0, 1);
+
+                double grossPremiumCedent      = mainCalc.grossPremiumCedent[0];
+                double sharePremiumCedent      = mainCalc.sharePremiumCedent[0];
+                double grossPremiumReinsMain   = mainCalc.grossPremiumReins[0];
+                double sharePremiumReinsMain   = mainCalc.sharePremiumReins[0];
+                double cedingCommissionAmtMain = mainCalc.cedingCommission[0];
+                double grossBrokerageMain      = mainCalc.grossBrokerage[0];
+                double netBrokerageMain        = mainCalc.netBrokerage[0];
+                double netPremiumFromYou       = mainCalc.netPremiumFromYou[0]; // debit (cedent)
+                double netPremiumToYou         = mainCalc.netPremiumToYou[0];   // credit (summary)
+                metrics.record(RunMetrics.Stage.CALCULATION, calcStart);
+
+                String noteNo       = debitNoteNo;
+                String noteDate     = docDate;
+
+                if (!creditsOnly) {
+                    // --- Write back (same column indices) ---
+                    row.setNumeric(11, grossPremiumCedent);
+                    row.setNumeric(12, sharePremiumCedent);
+                    row.setNumeric(13, grossPremiumReinsMain);
+                    row.setNumeric(14, sharePremiumReinsMain);
+                    row.setNumeric(15, cedingCommPct);
+                    row.setNumeric(16, cedingCommissionAmtMain);
+                    row.setNumeric(17, grossBrokerageMain);
+                    row.setNumeric(18, netBrokerageMain);
+                    row.setNumeric(19, netPremiumFromYou);
+                    row.setNumeric(20, netPremiumToYou);
+                    if (export != null) {
+                        export.debit(debitNoteNo, grossPremiumCedent, sharePremiumCedent, grossPremiumReinsMain,
+                                sharePremiumReinsMain, cedingCommPct, cedingCommissionAmtMain, grossBrokerageMain,
+                                netBrokerageMain, netPremiumFromYou, netPremiumToYou);
+                    }
+
+                    // --- Generate Debit Note (flag set once the file is written) ---
+                    String safeFileName = NoteFormats.fileName(debitNoteNo);
+                    pipeline.submit(
+                            () -> generateDebitNote(
+                                    debitTemplate,
+                                    output,
+                                    safeFileName,
+                                    currency,
+                                    noteNo,
+                                    noteDate,
+                                    interest,
+                                    insured,
+                                    defaultReinsured,
+                                    period,
+                                    SI,
+                                    cedentRate,
+                                    grossPremiumCedent,
+                                    share,
+                                    sharePremiumCedent,
+                                    netPremiumFromYou
+                            ),
+                            () -> {
+                                row.setString(mainProcessedCol, "Yes");
+                                if (index != null) index.recordMain(noteNo, debitHash);
+                                metrics.increment(RunMetrics.Counter.DEBIT_NOTES);
+                                metrics.add(RunMetrics.Amount.DEBIT_NET_PREMIUM, netPremiumFromYou);
+                                if (verbose) System.out.println("✅ Main Debit Note generated: " + noteNo);
+                                source.mainRowDone(row);
+                            },
+                            de -> {
+                                metrics.increment(RunMetrics.Counter.FAILURES);
+                                System.err.println("❌ Failed to generate debit note " + noteNo + ": " + de.getMessage());
+                                de.printStackTrace();
+                                source.mainRowDone(row);
+                            });
+                }
 
                 // --- Credit notes (by header names; robust to column order & new 'Reinsurer Address') ---
-                if (creditSheet != null) {
-                    Map<String,Integer> hdr = readHeaderMap(creditSheet);
-                    for (int cr = 1; cr <= creditSheet.getLastRowNum(); cr++) {
-                        Row crow = creditSheet.getRow(cr);
-                        if (crow == null) continue;
-
-                        String linkedDebit = getStringByHeader(crow, hdr, "Debit Note No.");
-                        if (linkedDebit == null || !linkedDebit.equalsIgnoreCase(debitNoteNo)) continue;
-
-                        String creditProcessed = getStringByHeader(crow, hdr, "Processed");
-                        if ("yes".equalsIgnoreCase(creditProcessed) || "processed".equalsIgnoreCase(creditProcessed)) {
-                            System.out.println("⏩ Skipping credit row " + cr + " (already processed)");
+                if (linkedCredits != null) {
+                    for (NoteRow crow : linkedCredits) {
+                        long creditReadStart = RunMetrics.start();
+                        metrics.increment(RunMetrics.Counter.CREDIT_ROWS_READ);
+                        int cr = crow.getRowNum();
+                        if (claimedCredits.contains(crow)) {
+                            metrics.increment(RunMetrics.Counter.SKIPPED_PROCESSED);
+                            if (verbose) System.out.println("⏩ Skipping credit row " + cr + " (already issued in this run)");
                             continue;
                         }
+                        String useCreditNo = creditNoteNo(crow, hdr, debitNoteNo);
+
+                        long creditHash = (index != null) ? index.hashCredit(crow, hdr, debitHash) : 0L;
+                        ProcessedIndex.Status creditStatus = (index != null)
+                                ? index.checkCredit(useCreditNo, creditHash) : ProcessedIndex.Status.UNKNOWN;
+                        if (creditStatus == ProcessedIndex.Status.DUPLICATE) {
+                            System.out.println("   ⚠️ Credit note " + useCreditNo + " is on more than one row; row " + cr + " is not indexed");
+                        }
+                        if (isProcessedFlag(getStringByHeader(crow, hdr, "Processed"))) {
+                            if (creditStatus == ProcessedIndex.Status.CHANGED) {
+                                System.out.println("   🔁 Re-issuing credit row " + cr + " (" + useCreditNo + "): inputs changed since it was processed");
+                            } else {
+                                if (index != null) index.recordCredit(useCreditNo, creditHash);
+                                metrics.increment(RunMetrics.Counter.SKIPPED_PROCESSED);
+                                if (verbose) System.out.println("⏩ Skipping credit row " + cr + " (already processed)");
+                                continue;
+                            }
+                        }
+                        claimedCredits.add(crow);
 
-                        String creditNoteNo    = getStringByHeader(crow, hdr, "Credit Note No.");
                         String reinsuredName   = getStringByHeader(crow, hdr, "Reinsured");          // inside table
                         String reinsurerName   = getStringByHeader(crow, hdr, "Reinsurer Name");     // To, block
                         String reinsurerAddr   = getStringByHeader(crow, hdr, "Reinsurer Address");  // To, block (optional)
@@ -166,6 +346,7 @@ public class BrokerDebitCreditGenerator {
                         double creditRowRate   = getDoubleByHeader(crow, hdr, "Reinsurance Rate (%)");
                         double creditRowBrok   = getDoubleByHeader(crow, hdr, "Brokerage (%)");
                         double creditRowCedPct = getDoubleByHeader(crow, hdr, "Ceding Commission (%)");
+                        metrics.record(RunMetrics.Stage.EXCEL_READ, creditReadStart);
 
                         if (reinsuredName == null || reinsuredName.trim().isEmpty()) {
                             reinsuredName = defaultReinsured; // fallback
@@ -174,16 +355,25 @@ public class BrokerDebitCreditGenerator {
                             reinsurerName = "(Reinsurer)";
                         }
 
-                        double effectiveReinsRate = (creditRowRate  > 0) ? creditRowRate  : ((mainReinsRate > 0) ? mainReinsRate : cedentRate);
-                        double effectiveBrokerage = (creditRowBrok  > 0) ? creditRowBrok  : brokerage;
-                        double effectiveCedingPct = (creditRowCedPct> 0) ? creditRowCedPct: cedingCommPct;
-
-                        double gpReins    = SI * (effectiveReinsRate / 100);
-                        double spReins    = gpReins * (reinsurerShare / 100);
-                        double ccAmt      = spReins * (effectiveCedingPct / 100);
-                        double gb         = spReins * (effectiveBrokerage / 100);
-                        double nb         = gb / 2.0;
-                        double netPayable = spReins - nb - ccAmt;
+                        long creditCalcStart = RunMetrics.start();
+                        creditCalc.sumInsured[0]    = SI;
+                        creditCalc.cedentRate[0]    = cedentRate;
+                        creditCalc.mainReinsRate[0] = mainReinsRate;
+                        creditCalc.mainBrokerage[0] = brokerage;
+                        creditCalc.mainCedingPct[0] = cedingCommPct;
+                        creditCalc.reinsRate[0]     = creditRowRate;
+                        creditCalc.share[0]         = reinsurerShare;
+                        creditCalc.brokerage[0]     = creditRowBrok;
+                        creditCalc.cedingPct[0]     = creditRowCedPct;
+                        PremiumEngine.calculateCredit(creditCalc, 0, 1);
+
+                        double effectiveReinsRate = creditCalc.effectiveReinsRate[0];
+                        double gpReins    = creditCalc.grossPremium[0];
+                        double spReins    = creditCalc.sharePremium[0];
+                        double ccAmt      = creditCalc.cedingCommission[0];
+                        double gb         = creditCalc.grossBrokerage[0];
+                        double netPayable = creditCalc.netPayable[0];
+                        metrics.record(RunMetrics.Stage.CALCULATION, creditCalcStart);
 
                         // write outputs back if headers exist
                         writeIfPresent(crow, hdr, "Fac Premium 100%",         gpReins);
@@ -191,92 +381,222 @@ public class BrokerDebitCreditGenerator {
                         writeIfPresent(crow, hdr, "Ceding Commission (Amount)",ccAmt);
                         writeIfPresent(crow, hdr, "Gross Brokerage",           gb);
                         writeIfPresent(crow, hdr, "Net Premium Payable To You",netPayable);
+                        if (export != null) export.credit(useCreditNo, debitNoteNo, gpReins, spReins, ccAmt, gb, netPayable);
 
-                        String useCreditNo  = (creditNoteNo != null && !creditNoteNo.trim().isEmpty())
-                                ? creditNoteNo
-                                : ("CN-" + debitNoteNo + "-" + reinsurerName.replaceAll("[^a-zA-Z0-9]", ""));
-                        String safeCredit   = useCreditNo.replaceAll("[^a-zA-Z0-9-_\\.]", "_");
-
-                        try {
-                            generateCreditNote(
-                                    creditTemplatePath,
-                                    outputFolder + safeCredit + ".docx",
-                                    useCreditNo,
-                                    docDate,
-                                    interest,
-                                    insured,
-                                    reinsuredName,    // table: Reinsured
-                                    reinsurerName,    // To, block: name
-                                    reinsurerAddr,    // To, block: address (optional)
-                                    period,
-                                    SI,
-                                    effectiveReinsRate,
-                                    gpReins,
-                                    reinsurerShare,
-                                    spReins,
-                                    gb,
-                                    netPayable
-                            );
-                            // mark processed if header exists
-                            writeIfPresent(crow, hdr, "Processed", "Yes");
-                            System.out.println("   ✅ Credit Note generated for " + reinsurerName + " (linked to " + debitNoteNo + ") - CN: " + useCreditNo);
-                        } catch (Exception ce) {
-                            System.err.println("   ❌ Failed to generate credit note for " + reinsurerName + ": " + ce.getMessage());
-                            ce.printStackTrace();
+                        if (statements != null) {
+                            statements.add(reinsurerName, reinsurerAddr, new CreditStatements.Line(
+                                    crow, useCreditNo, insured, period, spReins, gb, netPayable, creditHash));
+                            continue;
                         }
+
+                        String safeCredit   = NoteFormats.fileNameWithDots(useCreditNo);
+                        String tableReinsured = reinsuredName;
+                        String toName         = reinsurerName;
+
+                        pipeline.submit(
+                                () -> generateCreditNote(
+                                        creditTemplate,
+                                        output,
+                                        safeCredit,
+                                        currency,
+                                        useCreditNo,
+                                        noteDate,
+                                        interest,
+                                        insured,
+                                        tableReinsured,   // table: Reinsured
+                                        toName,           // To, block: name
+                                        reinsurerAddr,    // To, block: address (optional)
+                                        period,
+                                        SI,
+                                        effectiveReinsRate,
+                                        gpReins,
+                                        reinsurerShare,
+                                        spReins,
+                                        gb,
+                                        netPayable
+                                ),
+                                () -> {
+                                    // mark processed if header exists
+                                    writeIfPresent(crow, hdr, "Processed", "Yes");
+                                    if (index != null) index.recordCredit(useCreditNo, creditHash);
+                                    metrics.increment(RunMetrics.Counter.CREDIT_NOTES);
+                                    metrics.add(RunMetrics.Amount.CREDIT_NET_PAYABLE, netPayable);
+                                    if (verbose) System.out.println("   ✅ Credit Note generated for " + toName + " (linked to " + noteNo + ") - CN: " + useCreditNo);
+                                    source.creditRowDone(crow);
+                                },
+                                ce -> {
+                                    metrics.increment(RunMetrics.Counter.FAILURES);
+                                    System.err.println("   ❌ Failed to generate credit note for " + toName + ": " + ce.getMessage());
+                                    ce.printStackTrace();
+                                    source.creditRowDone(crow);
+                                });
                     }
                 }
+            });
+
+            if (statements != null) {
+                String statementDate = NoteFormats.today();
+                for (CreditStatements.Statement st : statements.statements()) {
+                    pipeline.submit(
+                            () -> output.write(st.fileName(), st.statementNo(), st.totalNetPayable,
+                                    (pdf, out) -> st.render(pdf, statementDate, currency, out)),
+                            () -> {
+                                for (CreditStatements.Line line : st.lines) {
+                                    writeIfPresent(line.row, hdr, "Processed", "Yes");
+                                    if (index != null) index.recordCredit(line.creditNoteNo, line.hash);
+                                    metrics.increment(RunMetrics.Counter.CREDIT_NOTES);
+                                    metrics.add(RunMetrics.Amount.CREDIT_NET_PAYABLE, line.netPayable);
+                                    source.creditRowDone(line.row);
+                                }
+                                metrics.increment(RunMetrics.Counter.CREDIT_STATEMENTS);
+                                if (verbose) System.out.println("   ✅ Credit Statement generated for " + st.reinsurerName + " (" + st.lines.size() + " risks) - " + st.statementNo());
+                            },
+                            se -> {
+                                metrics.increment(RunMetrics.Counter.FAILURES);
+                                System.err.println("   ❌ Failed to generate credit statement for " + st.reinsurerName + ": " + se.getMessage());
+                                se.printStackTrace();
+                                for (CreditStatements.Line line : st.lines) source.creditRowDone(line.row);
+                            });
+                }
             }
 
-            try (FileOutputStream fos = new FileOutputStream(excelFilePath)) {
-                wb.write(fos);
+            pipeline.awaitAll(); // wait for outstanding notes before saving the flags
+            output.finish();
+            if (output.isArchive()) System.out.println("🗜️ Notes archived to " + output.getArchiveFile().getPath());
+            if (export != null) {
+                export.finish();
+                System.out.println("📑 Results exported to " + export.file.getPath());
+            }
+            long saveStart = RunMetrics.start();
+            source.save();
+            metrics.record(RunMetrics.Stage.WORKBOOK_SAVE, saveStart);
+            if (index != null) {
+                index.save();
+                System.out.println("🗂️ Processed index: " + index.size() + " notes, " + index.getReissuedCount() + " re-issued (" + index.getPath() + ")");
             }
 
-            System.out.println("\n✅ All Debit & Credit Notes Processed and Excel Updated Successfully.");
-            openOutputFolder(outputFolder);
+            metrics.stopProgress();
+            File summary = new File(opts.metricsPath != null ? opts.metricsPath : excelFilePath + ".metrics.json");
+            metrics.writeSummary(summary, excelFilePath, currency);
+            System.out.println("📊 " + metrics.get(RunMetrics.Counter.DEBIT_NOTES) + " debit notes, "
+                    + metrics.get(RunMetrics.Counter.CREDIT_NOTES) + " credit notes"
+                    + (statements != null ? " in " + metrics.get(RunMetrics.Counter.CREDIT_STATEMENTS) + " statements, " : ", ")
+                    + metrics.get(RunMetrics.Counter.FAILURES) + " failed; summary: " + summary.getPath());
 
-        } catch (FileNotFoundException e) {
-            System.err.println("❌ File not found! Please check folder structure:");
-            System.err.println("Expected Excel file at: " + excelFilePath);
-        } catch (Exception e) {
-            e.printStackTrace();
+            System.out.println("\n✅ All Debit & Credit Notes Processed and " + source.describeSaveTarget() + " Successfully.");
+            return metrics;
+
+        } finally {
+            metrics.stopProgress();
+        }
+    }
+
+    private static NoteSource openSource(RunOptions opts, String excelFilePath) throws IOException {
+        if (opts.streaming) {
+            String resultsPath = (opts.resultsPath != null) ? opts.resultsPath : StreamingNoteSource.defaultResultsPath(excelFilePath);
+            return StreamingNoteSource.open(excelFilePath, resultsPath);
+        }
+        if (opts.journal) {
+            JournalingNoteSource source = JournalingNoteSource.open(excelFilePath);
+            if (source.getReplayedCount() > 0) {
+                System.out.println("♻️ Replayed " + source.getReplayedCount() + " finished rows from " + source.getJournalPath());
+            }
+            return source;
         }
+        return PoiNoteSource.open(excelFilePath);
+    }
+
+    private static ResultsExport openExport(RunOptions opts, String excelFilePath) throws IOException {
+        if (!opts.export) return null;
+        String path = (opts.exportPath != null) ? opts.exportPath : ResultsExport.defaultPath(excelFilePath);
+        return ResultsExport.open(new File(path), excelFilePath, opts.currency);
     }
 
     // ---------- Helpers: rows/headers ----------
 
-    private static Map<String,Integer> readHeaderMap(Sheet sheet) {
-        Map<String,Integer> map = new HashMap<>();
+    private static NoteOutput openOutput(RunOptions opts, String outputFolder, RunMetrics metrics) throws IOException {
+        if (opts.archive) {
+            String archivePath = (opts.archivePath != null) ? opts.archivePath
+                    : outputFolder + "notes-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".zip";
+            return NoteOutput.archive(new File(archivePath), opts.format, metrics);
+        }
+        // Parallel renders are fsync'ed so "Processed" is only set once the note is on disk
+        return new NoteOutput(outputFolder, opts.threads != 1, opts.format, metrics);
+    }
+
+    static Map<String,Integer> readHeaderMap(Sheet sheet) {
         Row hdr = sheet.getRow(0);
-        if (hdr == null) return map;
+        return (hdr == null) ? new HashMap<>() : readHeaderMap(new PoiNoteSource.PoiRow(hdr));
+    }
+
+    static Map<String,Integer> readHeaderMap(NoteRow hdr) {
+        Map<String,Integer> map = new HashMap<>();
         for (int i = 0; i < hdr.getLastCellNum(); i++) {
-            String key = getString(hdr, i).trim();
+            String key = hdr.getString(i).trim();
             if (!key.isEmpty()) map.put(key.toLowerCase(), i);
         }
         return map;
     }
 
-    private static String getStringByHeader(Row row, Map<String,Integer> hdr, String name) {
+    // Groups credit rows by normalized "Debit Note No." so each debit only visits its own lines.
+    // Rows keep sheet order within a group, so notes are produced in the same order as before.
+    static Map<String,List<NoteRow>> indexCreditRows(Iterable<NoteRow> creditRows, Map<String,Integer> hdr) {
+        Map<String,List<NoteRow>> index = new HashMap<>();
+        for (NoteRow crow : creditRows) {
+            String linkedDebit = getStringByHeader(crow, hdr, "Debit Note No.");
+            if (linkedDebit.isEmpty()) continue;
+            index.computeIfAbsent(normalizeNoteNo(linkedDebit), k -> new ArrayList<>()).add(crow);
+        }
+        return index;
+    }
+
+    // Per-char case fold, i.e. the same matching rule as equalsIgnoreCase on the (already trimmed) note numbers.
+    static String normalizeNoteNo(String noteNo) {
+        char[] chars = noteNo.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    static boolean isProcessedFlag(String flag) {
+        return "yes".equalsIgnoreCase(flag) || "processed".equalsIgnoreCase(flag);
+    }
+
+    // Credit note number as printed on the note; derived from debit note + reinsurer when the row has none.
+    static String creditNoteNo(NoteRow crow, Map<String,Integer> hdr, String debitNoteNo) {
+        String creditNoteNo  = getStringByHeader(crow, hdr, "Credit Note No.");
+        if (creditNoteNo != null && !creditNoteNo.trim().isEmpty()) return creditNoteNo;
+
+        return derivedCreditNoteNo(debitNoteNo, getStringByHeader(crow, hdr, "Reinsurer Name"));
+    }
+
+    static String derivedCreditNoteNo(String debitNoteNo, String reinsurerName) {
+        if (reinsurerName == null || reinsurerName.trim().isEmpty()) reinsurerName = "(Reinsurer)";
+        return "CN-" + debitNoteNo + "-" + NoteFormats.alphanumeric(reinsurerName);
+    }
+
+    static String getStringByHeader(NoteRow row, Map<String,Integer> hdr, String name) {
         Integer idx = hdr.get(name.toLowerCase());
-        return (idx == null) ? "" : getString(row, idx);
+        return (idx == null) ? "" : row.getString(idx);
     }
 
-    private static double getDoubleByHeader(Row row, Map<String,Integer> hdr, String name) {
+    static double getDoubleByHeader(NoteRow row, Map<String,Integer> hdr, String name) {
         Integer idx = hdr.get(name.toLowerCase());
-        return (idx == null) ? 0.0 : getDouble(row, idx);
+        return (idx == null) ? 0.0 : row.getDouble(idx);
     }
 
-    private static void writeIfPresent(Row row, Map<String,Integer> hdr, String name, double val) {
+    static void writeIfPresent(NoteRow row, Map<String,Integer> hdr, String name, double val) {
         Integer idx = hdr.get(name.toLowerCase());
-        if (idx != null) setNumeric(row, idx, val);
+        if (idx != null) row.setNumeric(idx, val);
     }
 
-    private static void writeIfPresent(Row row, Map<String,Integer> hdr, String name, String val) {
+    static void writeIfPresent(NoteRow row, Map<String,Integer> hdr, String name, String val) {
         Integer idx = hdr.get(name.toLowerCase());
-        if (idx != null) setString(row, idx, val);
+        if (idx != null) row.setString(idx, val);
     }
 
-    private static boolean isRowEmpty(Row row) {
+    static boolean isRowEmpty(Row row) {
         if (row == null) return true;
         for (int c = 0; c <= 10; c++) {
             Cell cell = row.getCell(c, Row.MissingCellPolicy.RETURN_BLANK_AS_NULL);
@@ -292,15 +612,15 @@ public class BrokerDebitCreditGenerator {
 
     // ---------- Excel low-level helpers ----------
 
-    private static String getString(Row row, int idx) {
+    static String getString(Row row, int idx) {
         Cell c = row.getCell(idx, Row.MissingCellPolicy.RETURN_BLANK_AS_NULL);
         if (c == null) return "";
         if (c.getCellType() == CellType.STRING) return c.getStringCellValue().trim();
-        if (c.getCellType() == CellType.NUMERIC) return String.valueOf(c.getNumericCellValue());
+        if (c.getCellType() == CellType.NUMERIC) return NoteFormats.cellText(c.getNumericCellValue());
         return "";
     }
 
-    private static double getDouble(Row row, int idx) {
+    static double getDouble(Row row, int idx) {
         Cell c = row.getCell(idx, Row.MissingCellPolicy.RETURN_BLANK_AS_NULL);
         if (c == null) return 0.0;
         if (c.getCellType() == CellType.NUMERIC) return c.getNumericCellValue();
@@ -311,136 +631,99 @@ public class BrokerDebitCreditGenerator {
         return 0.0;
     }
 
-    private static void setNumeric(Row row, int idx, double val) {
+    static void setNumeric(Row row, int idx, double val) {
         if (idx > 200) return;
         Cell c = row.getCell(idx);
         if (c == null) c = row.createCell(idx, CellType.NUMERIC);
         c.setCellValue(val);
     }
 
-    private static void setString(Row row, int idx, String val) {
+    static void setString(Row row, int idx, String val) {
         if (idx > 200) return;
         Cell c = row.getCell(idx);
         if (c == null) c = row.createCell(idx, CellType.STRING);
         c.setCellValue(val);
     }
 
-    // ---------- Word helpers ----------
+    // ---------- Word notes ----------
 
-    private static void setCellText(XWPFTable table, int rowIdx, int colIdx, String text) {
-        XWPFTableRow row = table.getRow(rowIdx);
-        if (row != null && row.getCell(colIdx) != null) {
-            row.getCell(colIdx).removeParagraph(0);
-            row.getCell(colIdx).setText(text);
-        }
-    }
-
-    private static void generateDebitNote(
-            String templatePath, String outputPath,
+    static void generateDebitNote(
+            String templatePath, NoteOutput output, String baseName, String currency,
             String debitNoteNo, String documentDate, String interest,
             String insured, String reinsurer, String period,
             double sumInsured, double rate, double facPremiumFull,
             double share, double sharePremium, double netPremiumFromYou)
-            throws IOException, InvalidFormatException {
-
-        try (FileInputStream fis = new FileInputStream(templatePath);
-             XWPFDocument doc = new XWPFDocument(fis)) {
-
-            XWPFTable table = doc.getTables().get(0);
-
-            setCellText(table, 0, 2, debitNoteNo);
-            setCellText(table, 1, 2, documentDate);
-            setCellText(table, 3, 2, interest);
-            setCellText(table, 4, 2, insured);
-            setCellText(table, 5, 2, reinsurer);
-            setCellText(table, 6, 2, period);
-            setCellText(table, 7, 2, "USD " + format(sumInsured));
-            setCellText(table, 8, 2, String.format("%.2f%%", rate));
-            setCellText(table, 9, 2, "USD " + format(facPremiumFull));
-            setCellText(table, 10, 2, String.format("%.2f%% of 100%%", share));
-            setCellText(table, 11, 2, "USD " + format(sharePremium));
-            setCellText(table, 12, 2, "USD " + format(netPremiumFromYou));
-
-            File outFile = new File(outputPath);
-            outFile.getParentFile().mkdirs();
-            try (FileOutputStream fos = new FileOutputStream(outFile)) {
-                doc.write(fos);
-            }
-        }
+            throws IOException {
+
+        String[] slots = debitSlots(currency, debitNoteNo, documentDate, interest, insured, reinsurer, period,
+                sumInsured, rate, facPremiumFull, share, sharePremium, netPremiumFromYou);
+        output.write(baseName, debitNoteNo, netPremiumFromYou, NoteTemplate.forPath(templatePath), slots, false, null, null);
     }
 
-    // Replace the “To,” block with Name + Address
-    private static void replaceToBlock(XWPFDocument doc, String reinsurerName, String reinsurerAddress) {
-        for (XWPFParagraph para : doc.getParagraphs()) {
-            String text = para.getText();
-            if (text != null && text.trim().toLowerCase().startsWith("to")) {
-                for (int i = para.getRuns().size() - 1; i >= 0; i--) {
-                    para.removeRun(i);
-                }
-                XWPFRun run = para.createRun();
-                run.setText("To,");
-                run.addBreak();
-                if (reinsurerName != null && !reinsurerName.isEmpty()) {
-                    run.setText(reinsurerName);
-                    if (reinsurerAddress != null && !reinsurerAddress.trim().isEmpty()) {
-                        run.addBreak();
-                        // support multi-line address separated by \n
-                        String[] lines = reinsurerAddress.split("\\r?\\n");
-                        for (int i = 0; i < lines.length; i++) {
-                            if (i > 0) run.addBreak();
-                            run.setText(lines[i]);
-                        }
-                    }
-                }
-                return;
-            }
-        }
+    // Text of the debit template's value cells (table rows 0-13, column 2); amounts prefixed with the currency
+    static String[] debitSlots(
+            String currency, String debitNoteNo, String documentDate, String interest,
+            String insured, String reinsurer, String period,
+            double sumInsured, double rate, double facPremiumFull,
+            double share, double sharePremium, double netPremiumFromYou) {
+
+        String[] slots = new String[NoteTemplate.SLOT_ROWS];
+        slots[0]  = debitNoteNo;
+        slots[1]  = documentDate;
+        slots[3]  = interest;
+        slots[4]  = insured;
+        slots[5]  = reinsurer;
+        slots[6]  = period;
+        slots[7]  = NoteFormats.amount(currency, sumInsured);
+        slots[8]  = NoteFormats.percent(rate);
+        slots[9]  = NoteFormats.amount(currency, facPremiumFull);
+        slots[10] = NoteFormats.shareOf100(share);
+        slots[11] = NoteFormats.amount(currency, sharePremium);
+        slots[12] = NoteFormats.amount(currency, netPremiumFromYou);
+        return slots;
     }
 
-    private static void generateCreditNote(
-            String templatePath, String outputPath,
+    static void generateCreditNote(
+            String templatePath, NoteOutput output, String baseName, String currency,
             String creditNoteNo, String documentDate, String interest,
             String insured, String reinsuredName, String reinsurerName, String reinsurerAddress,
             String period,
             double sumInsured, double rate, double facPremiumFull,
             double share, double sharePremium, double grossBrokerage, double netPayable)
-            throws IOException, InvalidFormatException {
-
-        try (FileInputStream fis = new FileInputStream(templatePath);
-             XWPFDocument doc = new XWPFDocument(fis)) {
-
-            // Update the “To,” block (name + optional address)
-            replaceToBlock(doc, reinsurerName, reinsurerAddress);
-
-            XWPFTable table = doc.getTables().get(0);
-
-            setCellText(table, 0, 2, creditNoteNo);
-            setCellText(table, 1, 2, documentDate);
-            setCellText(table, 3, 2, interest);
-            setCellText(table, 4, 2, insured);
-            setCellText(table, 5, 2, reinsuredName); // Reinsured inside table
-            setCellText(table, 6, 2, period);
-            setCellText(table, 7, 2, "USD " + format(sumInsured));
-            setCellText(table, 8, 2, String.format("%.2f%%", rate));
-            setCellText(table, 9, 2, "USD " + format(facPremiumFull));
-            setCellText(table,10, 2, String.format("%.2f%% of 100%%", share));
-            setCellText(table,11, 2, "USD " + format(sharePremium));
-            setCellText(table,12, 2, "USD " + format(grossBrokerage));
-            setCellText(table,13, 2, "USD " + format(netPayable));
-
-            File outFile = new File(outputPath);
-            outFile.getParentFile().mkdirs();
-            try (FileOutputStream fos = new FileOutputStream(outFile)) {
-                doc.write(fos);
-            }
-        }
+            throws IOException {
+
+        String[] slots = creditSlots(currency, creditNoteNo, documentDate, interest, insured, reinsuredName, period,
+                sumInsured, rate, facPremiumFull, share, sharePremium, grossBrokerage, netPayable);
+        // Update the “To,” block (name + optional address)
+        output.write(baseName, creditNoteNo, netPayable, NoteTemplate.forPath(templatePath), slots, true, reinsurerName, reinsurerAddress);
     }
 
-    private static String format(double val) {
-        return String.format("%,.2f", val);
+    // Text of the credit template's value cells; the reinsurer goes into the "To," block, not a slot
+    static String[] creditSlots(
+            String currency, String creditNoteNo, String documentDate, String interest,
+            String insured, String reinsuredName, String period,
+            double sumInsured, double rate, double facPremiumFull,
+            double share, double sharePremium, double grossBrokerage, double netPayable) {
+
+        String[] slots = new String[NoteTemplate.SLOT_ROWS];
+        slots[0]  = creditNoteNo;
+        slots[1]  = documentDate;
+        slots[3]  = interest;
+        slots[4]  = insured;
+        slots[5]  = reinsuredName; // Reinsured inside table
+        slots[6]  = period;
+        slots[7]  = NoteFormats.amount(currency, sumInsured);
+        slots[8]  = NoteFormats.percent(rate);
+        slots[9]  = NoteFormats.amount(currency, facPremiumFull);
+        slots[10] = NoteFormats.shareOf100(share);
+        slots[11] = NoteFormats.amount(currency, sharePremium);
+        slots[12] = NoteFormats.amount(currency, grossBrokerage);
+        slots[13] = NoteFormats.amount(currency, netPayable);
+        return slots;
     }
 
-    private static void openOutputFolder(String outputFolder) {
+
+    static void openOutputFolder(String outputFolder) {
         try {
             File folder = new File(outputFolder);
             if (folder.exists()) {
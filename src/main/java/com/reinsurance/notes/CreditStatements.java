@@ -0,0 +1,268 @@
+package com.reinsurance.notes;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Element;
+import com.lowagie.text.Font;
+import com.lowagie.text.PageSize;
+import com.lowagie.text.Paragraph;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.pdf.PdfPCell;
+import com.lowagie.text.pdf.PdfPTable;
+import com.lowagie.text.pdf.PdfWriter;
+import org.apache.poi.xwpf.usermodel.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Consolidated credit statements: one document per reinsurer instead of one credit note per row.
+ *
+ * While the generator walks CreditNoteDetails it hands every calculated credit row to {@link #add};
+ * rows are grouped by "Reinsurer Name" (trimmed, case-insensitive) with running totals, so the
+ * statements are complete after that single pass. Each statement lists one line per risk (credit
+ * note no., insured, period, share premium, gross brokerage, net payable) followed by the totals.
+ *
+ * Statement numbers are {@code CS-<reinsurer>-<yyyyMMdd-HHmmss>}, the reinsurer name reduced to letters
+ * and digits and stamped with the start of the run, so a later run never overwrites an earlier run's
+ * statements. Two reinsurer names that reduce to the same number (e.g. "Swiss Re" and "Swiss-Re")
+ * would share one file; the later one gets a {@code -2}, {@code -3}, ... suffix when its first row is
+ * added, before any statement is written or row flagged.
+ *
+ * Rows are only flagged once the statements are written, after the whole sheet has been walked, so a
+ * debit note no. on more than one main row hands the same credit rows in again; a row already on a
+ * statement is ignored, keeping each risk and the totals counted once.
+ */
+final class CreditStatements {
+
+    private static final String[] COLUMNS = {
+            "Credit Note No.", "Insured", "Period", "Share Premium", "Gross Brokerage", "Net Payable"
+    };
+    private static final float[] PDF_WIDTHS = {16, 22, 20, 14, 14, 14};
+
+    private static final DateTimeFormatter RUN_STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    /** One credit row on a statement; keeps the row so it can be flagged once the statement is written. */
+    static final class Line {
+        final NoteRow row;
+        final String creditNoteNo;
+        final String insured;
+        final String period;
+        final double sharePremium;
+        final double grossBrokerage;
+        final double netPayable;
+        final long hash; // ProcessedIndex hash of the credit row (0 without --index)
+
+        Line(NoteRow row, String creditNoteNo, String insured, String period,
+             double sharePremium, double grossBrokerage, double netPayable, long hash) {
+            this.row = row;
+            this.creditNoteNo = creditNoteNo;
+            this.insured = insured;
+            this.period = period;
+            this.sharePremium = sharePremium;
+            this.grossBrokerage = grossBrokerage;
+            this.netPayable = netPayable;
+            this.hash = hash;
+        }
+    }
+
+    static final class Statement {
+        final String reinsurerName;
+        private final String statementNo;
+        String reinsurerAddress;
+        final List<Line> lines = new ArrayList<>();
+        double totalSharePremium;
+        double totalGrossBrokerage;
+        double totalNetPayable;
+
+        Statement(String reinsurerName, String reinsurerAddress, String statementNo) {
+            this.reinsurerName = reinsurerName;
+            this.reinsurerAddress = reinsurerAddress;
+            this.statementNo = statementNo;
+        }
+
+        String statementNo() {
+            return statementNo;
+        }
+
+        String fileName() {
+            return NoteFormats.fileName(statementNo());
+        }
+
+        /** Renders the statement as .docx or PDF, with amounts in {@code currency}. */
+        void render(boolean pdf, String documentDate, String currency, OutputStream out) throws IOException {
+            if (pdf) renderPdf(documentDate, currency, out);
+            else     renderDocx(documentDate, currency, out);
+        }
+
+        private void renderDocx(String documentDate, String currency, OutputStream out) throws IOException {
+            try (XWPFDocument doc = new XWPFDocument()) {
+                XWPFParagraph title = doc.createParagraph();
+                title.setAlignment(ParagraphAlignment.CENTER);
+                XWPFRun titleRun = title.createRun();
+                titleRun.setBold(true);
+                titleRun.setFontSize(14);
+                titleRun.setText("CREDIT STATEMENT");
+
+                XWPFRun header = doc.createParagraph().createRun();
+                header.setText("Statement No.: " + statementNo());
+                header.addBreak();
+                header.setText("Date: " + documentDate);
+
+                XWPFRun to = doc.createParagraph().createRun();
+                String[] toLines = PdfNoteLayout.toBlockText(reinsurerName, reinsurerAddress).split("\n");
+                for (int i = 0; i < toLines.length; i++) {
+                    if (i > 0) to.addBreak();
+                    to.setText(toLines[i]);
+                }
+
+                XWPFTable table = doc.createTable(lines.size() + 2, COLUMNS.length);
+                for (int c = 0; c < COLUMNS.length; c++) setCell(table, 0, c, COLUMNS[c], true);
+                for (int i = 0; i < lines.size(); i++) {
+                    String[] cells = cellsOf(lines.get(i));
+                    for (int c = 0; c < cells.length; c++) setCell(table, i + 1, c, cells[c], false);
+                }
+                String[] totals = totalCells();
+                for (int c = 0; c < totals.length; c++) setCell(table, lines.size() + 1, c, totals[c], true);
+
+                doc.createParagraph().createRun().setText("All amounts in " + currency + ".");
+                doc.write(out);
+            }
+        }
+
+        private void renderPdf(String documentDate, String currency, OutputStream out) throws IOException {
+            PdfFonts fonts = PdfFonts.forText(PdfFonts.STANDARD, reinsurerName, reinsurerAddress);
+            for (Line line : lines) fonts = PdfFonts.forText(fonts, cellsOf(line));
+            Font titleFont = fonts.font(true, 14);
+            Font textFont = fonts.font(false, 10);
+            Font headerFont = fonts.font(true, 9);
+            Font cellFont = fonts.font(false, 9);
+
+            Document doc = new Document(PageSize.A4.rotate(), 40, 40, 40, 40);
+            try {
+                PdfWriter.getInstance(doc, out);
+                doc.open();
+
+                Paragraph title = new Paragraph("CREDIT STATEMENT", titleFont);
+                title.setAlignment(Element.ALIGN_CENTER);
+                doc.add(title);
+                doc.add(new Paragraph("Statement No.: " + statementNo() + "\nDate: " + documentDate, textFont));
+                doc.add(new Paragraph(PdfNoteLayout.toBlockText(reinsurerName, reinsurerAddress), textFont));
+
+                PdfPTable table = new PdfPTable(COLUMNS.length);
+                table.setWidthPercentage(100);
+                table.setWidths(PDF_WIDTHS);
+                table.setSpacingBefore(10);
+                table.setHeaderRows(1); // repeated on every page
+                for (String column : COLUMNS) addPdfCell(table, column, headerFont, false);
+                for (Line line : lines) {
+                    String[] cells = cellsOf(line);
+                    for (int c = 0; c < cells.length; c++) addPdfCell(table, cells[c], cellFont, c >= 3);
+                }
+                String[] totals = totalCells();
+                for (int c = 0; c < totals.length; c++) addPdfCell(table, totals[c], headerFont, c >= 3);
+                doc.add(table);
+
+                doc.add(new Paragraph("All amounts in " + currency + ".", textFont));
+            } catch (DocumentException e) {
+                throw new IOException("Unable to render statement " + statementNo() + ": " + e.getMessage(), e);
+            } finally {
+                if (doc.isOpen()) doc.close();
+            }
+        }
+
+        private String[] totalCells() {
+            return new String[] {
+                    "Total (" + lines.size() + ")", "", "",
+                    NoteFormats.money(totalSharePremium), NoteFormats.money(totalGrossBrokerage), NoteFormats.money(totalNetPayable)
+            };
+        }
+    }
+
+    private final String runStamp;
+    private final Map<String, Statement> byReinsurer = new LinkedHashMap<>();
+    // by upper-cased statement number, since file names may ignore case
+    private final Map<String, String> firstNameByNumber = new HashMap<>();
+    private final Map<String, Integer> numberUses = new HashMap<>();
+    private final Set<NoteRow> rows = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** @param runStart start of the run, stamped into every statement number */
+    CreditStatements(LocalDateTime runStart) {
+        this.runStamp = runStart.format(RUN_STAMP);
+    }
+
+    /** Adds one calculated credit row to its reinsurer's statement; false when the row is already on one. */
+    boolean add(String reinsurerName, String reinsurerAddress, Line line) {
+        if (!rows.add(line.row)) return false;
+        String key = reinsurerName.trim().toLowerCase();
+        Statement statement = byReinsurer.get(key);
+        if (statement == null) {
+            statement = new Statement(reinsurerName.trim(), reinsurerAddress, statementNo(reinsurerName.trim()));
+            byReinsurer.put(key, statement);
+        } else if ((statement.reinsurerAddress == null || statement.reinsurerAddress.trim().isEmpty())
+                && reinsurerAddress != null && !reinsurerAddress.trim().isEmpty()) {
+            statement.reinsurerAddress = reinsurerAddress; // first address given for this reinsurer
+        }
+        statement.lines.add(line);
+        statement.totalSharePremium   += line.sharePremium;
+        statement.totalGrossBrokerage += line.grossBrokerage;
+        statement.totalNetPayable     += line.netPayable;
+        return true;
+    }
+
+    /** Statements in order of each reinsurer's first credit row. */
+    Collection<Statement> statements() {
+        return byReinsurer.values();
+    }
+
+    // ---------- Helpers ----------
+
+    private String statementNo(String reinsurerName) {
+        String number = "CS-" + NoteFormats.alphanumeric(reinsurerName) + "-" + runStamp;
+        String key = number.toUpperCase(Locale.ROOT);
+        int use = numberUses.merge(key, 1, Integer::sum);
+        if (use == 1) {
+            firstNameByNumber.put(key, reinsurerName);
+            return number;
+        }
+        String deduplicated = number + "-" + use;
+        System.out.println("⚠️ Reinsurer names \"" + firstNameByNumber.get(key) + "\" and \"" + reinsurerName
+                + "\" give the same statement number; using " + deduplicated + " for \"" + reinsurerName + "\"");
+        return deduplicated;
+    }
+
+    private static String[] cellsOf(Line line) {
+        return new String[] {
+                line.creditNoteNo, line.insured, line.period,
+                NoteFormats.money(line.sharePremium), NoteFormats.money(line.grossBrokerage), NoteFormats.money(line.netPayable)
+        };
+    }
+
+    private static void setCell(XWPFTable table, int row, int col, String text, boolean bold) {
+        XWPFTableCell cell = table.getRow(row).getCell(col);
+        XWPFParagraph para = cell.getParagraphs().get(0);
+        if (col >= 3) para.setAlignment(ParagraphAlignment.RIGHT);
+        XWPFRun run = para.createRun();
+        run.setBold(bold);
+        run.setText(text);
+    }
+
+    private static void addPdfCell(PdfPTable table, String text, Font font, boolean rightAligned) {
+        PdfPCell cell = new PdfPCell(new Phrase(text, font));
+        cell.setPadding(3);
+        if (rightAligned) cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+        table.addCell(cell);
+    }
+}
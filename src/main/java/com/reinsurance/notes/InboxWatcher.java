@@ -0,0 +1,305 @@
+package com.reinsurance.notes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service mode ({@code --watch=DIR}): one long-running JVM that processes every workbook dropped
+ * into an inbox folder, so small intraday files no longer pay for JVM start-up and POI class loading.
+ *
+ * Each workbook becomes a job: it is moved into {@code DIR/jobs/<name>-<timestamp>/}, processed there
+ * exactly like a normal run (the workbook is updated in place, notes go to {@code output/}, the run
+ * summary next to the workbook) and the job's {@code status.json} tracks it from "running" to "done"
+ * or "failed". Jobs run one at a time; {@code --threads} still parallelises the notes within a job.
+ *
+ * Templates are parsed once and stay cached between jobs; they are only read again when the file on
+ * disk changes. A dropped file is picked up once its size and timestamp have been stable for
+ * {@link #SETTLE_MILLIS}, so copies over a network share are not read half-written. Workbooks already
+ * waiting in the inbox at start-up are processed first. The output folder is never opened.
+ */
+final class InboxWatcher {
+
+    static final String JOBS_DIR = "jobs";
+    static final String STATUS_FILE = "status.json";
+
+    private static final long SETTLE_MILLIS = 2000;
+    private static final long POLL_MILLIS = 500;
+    private static final DateTimeFormatter JOB_STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final RunOptions opts;
+    private final Path inbox;
+    private final Path jobs;
+    private final String templatePath;
+    private final String creditTemplatePath;
+    private final Map<Path, Pending> pending = new LinkedHashMap<>();
+    private volatile boolean stopping;
+
+    private InboxWatcher(RunOptions opts, Path inbox, String templatePath, String creditTemplatePath) {
+        this.opts = opts;
+        this.inbox = inbox;
+        this.jobs = inbox.resolve(JOBS_DIR);
+        this.templatePath = templatePath;
+        this.creditTemplatePath = creditTemplatePath;
+    }
+
+    /** Watches {@code opts.watchDir} until the JVM is shut down. */
+    static void run(RunOptions opts, String templatePath, String creditTemplatePath) {
+        Path inbox = new File(opts.watchDir).getAbsoluteFile().toPath();
+        System.out.println("==============================================");
+        System.out.println("   Reinsurance Debit & Credit Note Generator");
+        System.out.println("   Service mode");
+        System.out.println("==============================================");
+        System.out.println("Inbox: " + inbox);
+        System.out.println("Debit Template: " + templatePath);
+        System.out.println("Credit Template: " + creditTemplatePath);
+        if (opts.format != NoteOutput.Format.DOCX) {
+            System.out.println("Output Format: " + opts.format.name().toLowerCase());
+        }
+
+        try {
+            Files.createDirectories(inbox.resolve(JOBS_DIR));
+            new InboxWatcher(opts, inbox, templatePath, creditTemplatePath).watch();
+        } catch (IOException e) {
+            System.err.println("❌ Unable to watch inbox " + inbox + ": " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void watch() throws IOException {
+        warmUp();
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            inbox.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+            // let a running job finish (and save its workbook) before the JVM exits; the loop sees the
+            // flag within one poll and the watch service is closed when it leaves this block
+            Thread loop = Thread.currentThread();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                stopping = true;
+                try {
+                    loop.join(TimeUnit.MINUTES.toMillis(5));
+                } catch (InterruptedException ignored) {
+                    // exiting anyway
+                }
+            }, "inbox-shutdown"));
+
+            scanInbox(); // files dropped while the service was down
+            System.out.println("👀 Watching " + inbox + " for workbooks (Ctrl+C to stop)...\n");
+
+            while (!stopping) {
+                WatchKey key;
+                try {
+                    key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            scanInbox();
+                        } else {
+                            offer(inbox.resolve((Path) event.context()));
+                        }
+                    }
+                    key.reset();
+                }
+                runSettledJobs();
+            }
+        }
+        System.out.println("👋 Service stopped.");
+    }
+
+    // Parses the templates (and their PDF layouts) before the first job arrives.
+    private void warmUp() {
+        for (String path : new String[] { templatePath, creditTemplatePath }) {
+            try {
+                NoteTemplate template = NoteTemplate.forPath(path);
+                if (opts.format.pdf()) template.pdfLayout();
+            } catch (IOException e) {
+                System.err.println("⚠️ Template not loaded yet (" + path + "): " + e.getMessage());
+            }
+        }
+    }
+
+    // ---------- Inbox ----------
+
+    private void scanInbox() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(inbox, "*.xlsx")) {
+            for (Path file : files) offer(file);
+        }
+    }
+
+    private void offer(Path file) {
+        String name = file.getFileName().toString();
+        // Excel lock files (~$Book.xlsx) and hidden temp files of copy tools are not workbooks
+        if (!name.toLowerCase().endsWith(".xlsx") || name.startsWith("~$") || name.startsWith(".")) return;
+        if (!pending.containsKey(file)) pending.put(file, new Pending());
+    }
+
+    private void runSettledJobs() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext() && !stopping) {
+            Map.Entry<Path, Pending> entry = it.next();
+            Path file = entry.getKey();
+            Pending p = entry.getValue();
+            File f = file.toFile();
+            if (!f.isFile()) {
+                it.remove(); // moved away or deleted before it settled
+                continue;
+            }
+            long size = f.length();
+            long modified = f.lastModified();
+            if (size != p.size || modified != p.modified) {
+                p.size = size;
+                p.modified = modified;
+                p.since = now;
+                continue;
+            }
+            if (now - p.since < SETTLE_MILLIS) continue;
+            it.remove();
+            runJob(file);
+        }
+    }
+
+    private static final class Pending {
+        long size = -1;
+        long modified = -1;
+        long since;
+    }
+
+    // ---------- Jobs ----------
+
+    private void runJob(Path dropped) {
+        String fileName = dropped.getFileName().toString();
+        String baseName = fileName.substring(0, fileName.length() - ".xlsx".length());
+        String jobId = NoteFormats.fileName(baseName) + "-" + LocalDateTime.now().format(JOB_STAMP);
+        Path jobDir = jobs.resolve(jobId);
+        Path workbook = jobDir.resolve(fileName);
+
+        JobStatus status = new JobStatus(jobId, fileName, jobDir.resolve(STATUS_FILE));
+        System.out.println("📥 Job " + jobId + ": " + fileName);
+        try {
+            Files.createDirectories(jobDir);
+            move(dropped, workbook);
+            status.write();
+
+            // templates stay parsed between jobs; only a replaced file is read again
+            NoteTemplate.evictIfChanged(templatePath);
+            NoteTemplate.evictIfChanged(creditTemplatePath);
+
+            String outputFolder = jobDir.resolve("output").toString() + File.separator;
+            RunMetrics metrics = BrokerDebitCreditGenerator.run(
+                    opts, workbook.toString(), templatePath, creditTemplatePath, outputFolder);
+            status.finished(metrics, workbook + ".metrics.json");
+            System.out.println("📤 Job " + jobId + " done: " + status.debitNotes + " debit notes, "
+                    + status.creditNotes + " credit notes, " + status.failures + " failed\n");
+        } catch (Exception e) {
+            status.failed(e);
+            System.err.println("❌ Job " + jobId + " failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+
+        try {
+            status.write();
+        } catch (IOException e) {
+            System.err.println("⚠️ Unable to write status of job " + jobId + ": " + e.getMessage());
+        }
+    }
+
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to);
+        }
+    }
+
+    /** Contents of a job's {@code status.json}, rewritten atomically on every state change. */
+    private static final class JobStatus {
+        final String jobId;
+        final String workbook;
+        final Path file;
+        final Instant startedAt = Instant.now();
+        String state = "running";
+        Instant finishedAt;
+        long debitNotes;
+        long creditNotes;
+        long failures;
+        String summary;
+        String error;
+
+        JobStatus(String jobId, String workbook, Path file) {
+            this.jobId = jobId;
+            this.workbook = workbook;
+            this.file = file;
+        }
+
+        void finished(RunMetrics metrics, String summaryPath) {
+            state = "done";
+            finishedAt = Instant.now();
+            debitNotes = metrics.get(RunMetrics.Counter.DEBIT_NOTES);
+            creditNotes = metrics.get(RunMetrics.Counter.CREDIT_NOTES);
+            failures = metrics.get(RunMetrics.Counter.FAILURES);
+            summary = summaryPath;
+        }
+
+        void failed(Exception e) {
+            state = "failed";
+            finishedAt = Instant.now();
+            error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+
+        void write() throws IOException {
+            StringBuilder json = new StringBuilder(512);
+            json.append("{\n");
+            json.append("  \"job\": \"").append(RunMetrics.escapeJson(jobId)).append("\",\n");
+            json.append("  \"workbook\": \"").append(RunMetrics.escapeJson(workbook)).append("\",\n");
+            json.append("  \"state\": \"").append(state).append("\",\n");
+            json.append("  \"startedAt\": \"").append(startedAt).append("\",\n");
+            if (finishedAt != null) {
+                json.append("  \"finishedAt\": \"").append(finishedAt).append("\",\n");
+                json.append("  \"elapsedMillis\": ").append(finishedAt.toEpochMilli() - startedAt.toEpochMilli()).append(",\n");
+            }
+            if (summary != null) {
+                json.append("  \"summary\": \"").append(RunMetrics.escapeJson(summary)).append("\",\n");
+            }
+            if (error != null) {
+                json.append("  \"error\": \"").append(RunMetrics.escapeJson(error)).append("\",\n");
+            }
+            json.append("  \"debitNotes\": ").append(debitNotes).append(",\n");
+            json.append("  \"creditNotes\": ").append(creditNotes).append(",\n");
+            json.append("  \"failures\": ").append(failures).append('\n');
+            json.append("}\n");
+
+            // readers polling the file never see it half-written
+            Path tmp = file.resolveSibling(STATUS_FILE + ".tmp");
+            try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                out.write(json.toString());
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.reinsurance.notes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Incremental persistence on top of {@link PoiNoteSource}.
+ *
+ * Every cell a row writes (calculated columns, auto-date, "Processed") is appended to
+ * {@code <workbook>.journal} as soon as that row's note is done, and flushed. The workbook itself is
+ * only written once, at the end of the run, through a temp file and an atomic rename; the journal is
+ * then deleted. If the process dies before that, the next run replays the journal into the freshly
+ * loaded workbook, so finished rows come back marked "Processed" and are skipped instead of being
+ * recalculated.
+ *
+ * A debit row is journaled only after all of its credit rows, so a crash never leaves a debit marked
+ * done while some of its credit notes are still outstanding.
+ *
+ * Line format: {@code M|C <tab> row <tab> (s|n)col=value ... <tab> .}; strings are escaped, numbers use
+ * {@link Double#toString} so values round-trip exactly. An entry counts only when its whole line,
+ * newline included, parses; replay stops at the first one that does not (the torn tail of a crash) and
+ * the journal is truncated back to the last complete entry before new entries are appended.
+ */
+final class JournalingNoteSource implements NoteSource {
+
+    private static final String HEADER_PREFIX = "#journal\t";
+    private static final String END_OF_ENTRY = ".";
+
+    private final PoiNoteSource delegate;
+    private final File journalFile;
+    private final String fingerprint;
+    private BufferedWriter journal;
+
+    private RecordingRow heldDebit; // waits for its credit rows before it is journaled
+    private int replayed;
+
+    private JournalingNoteSource(PoiNoteSource delegate, File excelFile) {
+        this.delegate = delegate;
+        this.journalFile = new File(excelFile.getPath() + ".journal");
+        this.fingerprint = excelFile.length() + "\t" + excelFile.lastModified();
+    }
+
+    static JournalingNoteSource open(String excelFilePath) throws IOException {
+        PoiNoteSource delegate = PoiNoteSource.open(excelFilePath);
+        try {
+            JournalingNoteSource source = new JournalingNoteSource(delegate, new File(excelFilePath));
+            source.startJournal(source.replay());
+            return source;
+        } catch (IOException | RuntimeException e) {
+            delegate.close();
+            throw e;
+        }
+    }
+
+    /** Number of journal entries applied when the source was opened. */
+    int getReplayedCount() {
+        return replayed;
+    }
+
+    String getJournalPath() {
+        return journalFile.getPath();
+    }
+
+    // ---------- Replay ----------
+
+    /** Applies every complete entry and returns the journal length up to the last one (0: start afresh). */
+    private long replay() throws IOException {
+        if (!journalFile.exists()) return 0;
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(journalFile), 64 * 1024)) {
+            LineReader lines = new LineReader(in);
+            String header = lines.next();
+            if (header != null && header.equals(HEADER_PREFIX + fingerprint)) return replayEntries(lines);
+        }
+        File stale = new File(journalFile.getPath() + ".stale");
+        System.out.println("⚠️ Workbook changed since " + journalFile.getName() + " was written; moving it aside to " + stale.getName());
+        Files.move(journalFile.toPath(), stale.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return 0;
+    }
+
+    private long replayEntries(LineReader lines) throws IOException {
+        long complete = lines.position;
+        String line;
+        while ((line = lines.next()) != null) {
+            String[] parts = line.split("\t");
+            if (parts.length < 3 || !parts[parts.length - 1].equals(END_OF_ENTRY)) break; // torn tail from a crash
+            List<Consumer<NoteRow>> cells = new ArrayList<>(parts.length - 3);
+            int r;
+            try {
+                r = Integer.parseInt(parts[1]);
+                for (int i = 2; i < parts.length - 1; i++) cells.add(parseCell(parts[i]));
+            } catch (NumberFormatException e) {
+                break; // garbled, so treated like a torn tail
+            }
+            NoteRow row = parts[0].equals("M") ? delegate.mainRow(r) : delegate.creditRow(r);
+            if (row != null) {
+                for (Consumer<NoteRow> cell : cells) cell.accept(row);
+                replayed++;
+            }
+            complete = lines.position;
+        }
+        return complete;
+    }
+
+    private static Consumer<NoteRow> parseCell(String cell) {
+        int eq = cell.indexOf('=');
+        if (eq < 2) return row -> {};
+        int col = Integer.parseInt(cell.substring(1, eq));
+        String value = cell.substring(eq + 1);
+        if (cell.charAt(0) == 'n') {
+            double number = Double.parseDouble(value);
+            return row -> row.setNumeric(col, number);
+        }
+        String text = unescape(value);
+        return row -> row.setString(col, text);
+    }
+
+    /** Opens the journal for appending after the first {@code validLength} bytes, dropping any torn tail. */
+    private void startJournal(long validLength) throws IOException {
+        boolean resume = validLength > 0;
+        FileOutputStream out = new FileOutputStream(journalFile, resume);
+        try {
+            if (resume && out.getChannel().size() > validLength) {
+                System.out.println("⚠️ Discarding incomplete entries at the end of " + journalFile.getName());
+                out.getChannel().truncate(validLength);
+            }
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+        journal = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (!resume) {
+            journal.write(HEADER_PREFIX + fingerprint);
+            journal.newLine();
+            journal.flush();
+        }
+    }
+
+    // ---------- NoteSource ----------
+
+    @Override
+    public Map<String,Integer> getCreditHeader() {
+        return delegate.getCreditHeader();
+    }
+
+    @Override
+    public Iterable<NoteRow> getCreditRows() {
+        List<NoteRow> rows = new ArrayList<>();
+        for (NoteRow row : delegate.getCreditRows()) rows.add(new RecordingRow('C', row));
+        return rows;
+    }
+
+    @Override
+    public void forEachMainRow(MainRowHandler handler) throws Exception {
+        delegate.forEachMainRow((r, row) -> handler.handle(r, row == null ? null : new RecordingRow('M', row)));
+    }
+
+    @Override
+    public void mainRowDone(NoteRow row) throws IOException {
+        flushHeldDebit();
+        heldDebit = (RecordingRow) row;
+    }
+
+    @Override
+    public void creditRowDone(NoteRow row) throws IOException {
+        append((RecordingRow) row);
+    }
+
+    @Override
+    public void save() throws IOException {
+        flushHeldDebit();
+        delegate.saveAtomically();
+        journal.close();
+        journal = null;
+        Files.deleteIfExists(journalFile.toPath());
+    }
+
+    @Override
+    public String describeSaveTarget() {
+        return delegate.describeSaveTarget();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            // a failed run keeps its journal (without the held debit) for the next run to replay
+            if (journal != null) journal.close();
+        } finally {
+            delegate.close();
+        }
+    }
+
+    private void flushHeldDebit() throws IOException {
+        if (heldDebit != null) {
+            append(heldDebit);
+            heldDebit = null;
+        }
+    }
+
+    private void append(RecordingRow row) throws IOException {
+        if (row.writes.isEmpty()) return;
+        StringBuilder line = new StringBuilder();
+        line.append(row.sheet).append('\t').append(row.getRowNum());
+        for (String w : row.writes) line.append('\t').append(w);
+        line.append('\t').append(END_OF_ENTRY);
+        journal.write(line.toString());
+        journal.newLine();
+        journal.flush(); // enough to survive a process crash
+        row.writes.clear();
+    }
+
+    // ---------- Rows ----------
+
+    /** Forwards to the workbook row and remembers every cell written since the last journal entry. */
+    private static final class RecordingRow implements NoteRow {
+        private final char sheet;
+        private final NoteRow row;
+        private final List<String> writes = new ArrayList<>(12);
+
+        RecordingRow(char sheet, NoteRow row) {
+            this.sheet = sheet;
+            this.row = row;
+        }
+
+        @Override public int getRowNum()              { return row.getRowNum(); }
+        @Override public int getLastCellNum()         { return row.getLastCellNum(); }
+        @Override public boolean isEmpty()            { return row.isEmpty(); }
+        @Override public String getString(int idx)   { return row.getString(idx); }
+        @Override public double getDouble(int idx)   { return row.getDouble(idx); }
+
+        @Override
+        public void setString(int idx, String val) {
+            row.setString(idx, val);
+            if (idx <= 200) writes.add("s" + idx + "=" + escape(val));
+        }
+
+        @Override
+        public void setNumeric(int idx, double val) {
+            row.setNumeric(idx, val);
+            if (idx <= 200) writes.add("n" + idx + "=" + val);
+        }
+    }
+
+    /** UTF-8 lines with their end offsets; a last line without its newline is not returned. */
+    private static final class LineReader {
+        private final InputStream in;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        long position; // bytes up to the end of the last line returned
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        String next() throws IOException {
+            line.reset();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    position += line.size() + 1;
+                    String text = line.toString(StandardCharsets.UTF_8);
+                    return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+                }
+                line.write(b);
+            }
+            return null;
+        }
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t");  break;
+                case '\n': sb.append("\\n");  break;
+                case '\r': sb.append("\\r");  break;
+                default:   sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String unescape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char n = s.charAt(++i);
+                sb.append(n == 't' ? '\t' : n == 'n' ? '\n' : n == 'r' ? '\r' : n);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,223 @@
+package com.reinsurance.notes;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Text of the note fields: money, percentages, document dates, numeric cells, note numbers and file names.
+ *
+ * Every method returns exactly what the {@code String.format}/{@code replaceAll} call it replaces
+ * returned, without parsing a format string or a regex per call. Money and percentages are written
+ * digit by digit into a per-thread buffer when the default locale formats numbers as
+ * {@code -1,234.50}; any other locale, and amounts beyond {@link #FAST_LIMIT}, go through
+ * {@link String#format} as before.
+ */
+final class NoteFormats {
+
+    /** Pattern of the document date written into the notes and back into the workbook. */
+    static final DateTimeFormatter DOCUMENT_DATE = DateTimeFormatter.ofPattern("dd-MMM-yyyy");
+
+    // amount * 100 stays exact to well under a cent below this, so rounding can be decided in double
+    private static final double FAST_LIMIT = 1e11;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(32));
+
+    private static volatile LocaleCheck localeCheck = LocaleCheck.of(Locale.getDefault(Locale.Category.FORMAT));
+    private static volatile CachedDate today;
+
+    private NoteFormats() {}
+
+    /** {@code String.format("%,.2f", value)}. */
+    static String money(double value) {
+        if (!fast(value)) return String.format("%,.2f", value);
+        StringBuilder sb = buffer();
+        appendFixed2(sb, value, true);
+        return sb.toString();
+    }
+
+    /** {@code currency + " " + String.format("%,.2f", value)}, e.g. {@code "USD 1,234.50"}. */
+    static String amount(String currency, double value) {
+        if (!fast(value)) return currency + " " + String.format("%,.2f", value);
+        StringBuilder sb = buffer().append(currency).append(' ');
+        appendFixed2(sb, value, true);
+        return sb.toString();
+    }
+
+    /** {@code String.format("%.2f%%", value)}. */
+    static String percent(double value) {
+        if (!fast(value)) return String.format("%.2f%%", value);
+        StringBuilder sb = buffer();
+        appendFixed2(sb, value, false);
+        return sb.append('%').toString();
+    }
+
+    /** {@code String.format("%.2f%% of 100%%", value)}. */
+    static String shareOf100(double value) {
+        if (!fast(value)) return String.format("%.2f%% of 100%%", value);
+        StringBuilder sb = buffer();
+        appendFixed2(sb, value, false);
+        return sb.append("% of 100%").toString();
+    }
+
+    /** {@code LocalDate.now().format(DOCUMENT_DATE)}, formatted once per day. */
+    static String today() {
+        LocalDate now = LocalDate.now();
+        CachedDate cached = today;
+        if (cached == null || !cached.date.equals(now)) {
+            today = cached = new CachedDate(now, now.format(DOCUMENT_DATE));
+        }
+        return cached.text;
+    }
+
+    /** {@code String.valueOf(value)} of a numeric cell; whole numbers skip the floating-point conversion. */
+    static String cellText(double value) {
+        if (value == (long) value && Math.abs(value) < 1e7 && Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(-0.0)) {
+            return buffer().append((long) value).append(".0").toString();
+        }
+        return String.valueOf(value);
+    }
+
+    /** {@code "DN-" + String.format("%03d", row)}: the number given to a main row without one. */
+    static String fallbackDebitNoteNo(int row) {
+        if (row < 0 || !fast(row)) return "DN-" + String.format("%03d", row);
+        StringBuilder sb = buffer().append("DN-");
+        if (row < 100) sb.append('0');
+        if (row < 10) sb.append('0');
+        return sb.append(row).toString();
+    }
+
+    /** {@code name.replaceAll("[^a-zA-Z0-9-_]", "_")}: the note number as a file name. */
+    static String fileName(String name) {
+        return sanitize(name, false);
+    }
+
+    /** {@code name.replaceAll("[^a-zA-Z0-9-_\\.]", "_")}: as {@link #fileName} but keeping dots. */
+    static String fileNameWithDots(String name) {
+        return sanitize(name, true);
+    }
+
+    /** {@code name.replaceAll("[^a-zA-Z0-9]", "")}: the reinsurer name inside a note number. */
+    static String alphanumeric(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (!isAlphanumeric(name.charAt(i))) {
+                StringBuilder sb = buffer();
+                for (int j = 0; j < name.length(); j++) {
+                    char c = name.charAt(j);
+                    if (isAlphanumeric(c)) sb.append(c);
+                }
+                return sb.toString();
+            }
+        }
+        return name;
+    }
+
+    // ---------- Internals ----------
+
+    private static String sanitize(String name, boolean keepDots) {
+        for (int i = 0; i < name.length(); i++) {
+            if (!isFileChar(name.charAt(i), keepDots)) {
+                StringBuilder sb = buffer().append(name, 0, i);
+                for (int j = i; j < name.length(); j++) {
+                    char c = name.charAt(j);
+                    sb.append(isFileChar(c, keepDots) ? c : '_');
+                }
+                return sb.toString();
+            }
+        }
+        return name; // nothing to replace: no copy
+    }
+
+    private static boolean isAlphanumeric(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isFileChar(char c, boolean keepDots) {
+        return isAlphanumeric(c) || c == '-' || c == '_' || (keepDots && c == '.');
+    }
+
+    private static StringBuilder buffer() {
+        StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        return sb;
+    }
+
+    private static boolean fast(double value) {
+        if (!(Math.abs(value) < FAST_LIMIT)) return false; // also NaN
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        LocaleCheck check = localeCheck;
+        if (check.locale != locale) localeCheck = check = LocaleCheck.of(locale);
+        return check.plain;
+    }
+
+    /*
+     * Formatter rounds HALF_UP on the shortest decimal form of the double (1.005 -> "1.01"), not on its
+     * binary value. Away from a tie the scaled double decides the same way; near one, BigDecimal.valueOf
+     * reproduces Formatter's rounding exactly.
+     */
+    private static void appendFixed2(StringBuilder sb, double value, boolean grouping) {
+        if (Double.doubleToRawLongBits(value) < 0) sb.append('-'); // -0.0 and -0.001 print as "-0.00" too
+        double abs = Math.abs(value);
+        double scaled = abs * 100;
+        long cents = (long) scaled;
+        double frac = scaled - cents;
+        if (Math.abs(frac - 0.5) > 0.01) {
+            if (frac > 0.5) cents++;
+        } else {
+            cents = BigDecimal.valueOf(abs).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+        }
+
+        long units = cents / 100;
+        int start = sb.length();
+        if (units == 0) {
+            sb.append('0');
+        } else {
+            int digits = 0;
+            for (long u = units; u > 0; u /= 10) {
+                if (grouping && digits > 0 && digits % 3 == 0) sb.append(',');
+                sb.append((char) ('0' + u % 10));
+                digits++;
+            }
+            reverse(sb, start, sb.length() - 1);
+        }
+        int rest = (int) (cents % 100);
+        sb.append('.').append((char) ('0' + rest / 10)).append((char) ('0' + rest % 10));
+    }
+
+    private static void reverse(StringBuilder sb, int from, int to) {
+        for (; from < to; from++, to--) {
+            char c = sb.charAt(from);
+            sb.setCharAt(from, sb.charAt(to));
+            sb.setCharAt(to, c);
+        }
+    }
+
+    /** Whether {@code locale} formats {@code %,.2f} the way the digit-by-digit path writes it. */
+    private static final class LocaleCheck {
+        final Locale locale;
+        final boolean plain;
+
+        private LocaleCheck(Locale locale, boolean plain) {
+            this.locale = locale;
+            this.plain = plain;
+        }
+
+        static LocaleCheck of(Locale locale) {
+            boolean plain = String.format(locale, "%,.2f", -1234567.5).equals("-1,234,567.50")
+                    && String.format(locale, "%.2f", 0.25).equals("0.25");
+            return new LocaleCheck(locale, plain);
+        }
+    }
+
+    private static final class CachedDate {
+        final LocalDate date;
+        final String text;
+
+        CachedDate(LocalDate date, String text) {
+            this.date = date;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.reinsurance.notes;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Local HTTP API ({@code --http=[HOST:]PORT}) that generates a single note on demand, without a
+ * workbook: the request carries the debit row's inputs (columns 0-10 plus the ceding commission %)
+ * and optionally its credit lines as JSON, the response carries the generated document.
+ *
+ * <pre>
+ *   POST /notes/debit    the debit note
+ *   POST /notes/credit   the credit note(s) of the lines in "credits"
+ *   POST /notes          the debit note and all of its credit notes
+ *   GET  /health         liveness and note counters
+ * </pre>
+ *
+ * {@code ?format=docx|pdf|both} overrides {@code --format} and a {@code "currency"} field {@code --currency}. A response holding exactly one document is
+ * that document; anything more comes back as a ZIP with the same {@code manifest.csv} as
+ * {@code --archive}. Calculations go through {@link PremiumEngine} and the slot text through the same
+ * builders as a workbook run, so a note from the API is identical to the one the batch run would write
+ * for the same inputs. Nothing is written to disk.
+ *
+ * Requests are served on virtual threads (a worker pool on JVMs without them); the templates are parsed
+ * once at start-up and shared through {@link NoteTemplate}'s cache.
+ */
+final class NoteHttpServer {
+
+    private static final int MAX_BODY_BYTES = 1 << 20;
+    private static final String DOCX_TYPE = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+
+    private final RunOptions opts;
+    private final String templatePath;
+    private final String creditTemplatePath;
+    private final RunMetrics metrics = new RunMetrics();
+
+    private NoteHttpServer(RunOptions opts, String templatePath, String creditTemplatePath) {
+        this.opts = opts;
+        this.templatePath = templatePath;
+        this.creditTemplatePath = creditTemplatePath;
+    }
+
+    /** Starts the server; it keeps running on its own threads until the JVM is shut down. */
+    static void run(RunOptions opts, String templatePath, String creditTemplatePath) {
+        System.out.println("==============================================");
+        System.out.println("   Reinsurance Debit & Credit Note Generator");
+        System.out.println("   HTTP API");
+        System.out.println("==============================================");
+        System.out.println("Debit Template: " + templatePath);
+        System.out.println("Credit Template: " + creditTemplatePath);
+
+        NoteHttpServer api = new NoteHttpServer(opts, templatePath, creditTemplatePath);
+        try {
+            for (String path : new String[] { templatePath, creditTemplatePath }) {
+                NoteTemplate template = NoteTemplate.forPath(path);
+                if (opts.format.pdf()) template.pdfLayout();
+            }
+
+            HttpServer server = HttpServer.create(new InetSocketAddress(opts.httpHost, opts.httpPort), 0);
+            ExecutorService executor = WorkerPools.newPool("http", WorkerPools.VIRTUAL);
+            server.setExecutor(executor);
+            server.createContext("/notes", api::handleNotes);
+            server.createContext("/health", api::handleHealth);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop(2);
+                executor.shutdown();
+            }, "http-shutdown"));
+            System.out.println("🌐 Listening on http://" + opts.httpHost + ":" + server.getAddress().getPort() + "/notes (Ctrl+C to stop)");
+        } catch (IOException e) {
+            System.err.println("❌ Unable to start HTTP API: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // ---------- Handlers ----------
+
+    private void handleNotes(HttpExchange ex) throws IOException {
+        try {
+            String path = ex.getRequestURI().getPath();
+            boolean debit;
+            boolean credits;
+            switch (path.endsWith("/") ? path.substring(0, path.length() - 1) : path) {
+                case "/notes":        debit = true;  credits = true;  break;
+                case "/notes/debit":  debit = true;  credits = false; break;
+                case "/notes/credit": debit = false; credits = true;  break;
+                default:
+                    sendError(ex, 404, "Unknown path: " + path);
+                    return;
+            }
+            if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) {
+                ex.getResponseHeaders().set("Allow", "POST");
+                sendError(ex, 405, "Use POST with a JSON body");
+                return;
+            }
+
+            NoteOutput.Format format = formatOf(ex);
+            Object body = JsonReader.parse(readBody(ex));
+            if (!(body instanceof Map)) throw new IllegalArgumentException("Request body must be a JSON object");
+            List<Note> notes = buildNotes(asObject(body), debit, credits);
+            if (notes.isEmpty()) throw new IllegalArgumentException("No credit lines in \"credits\"");
+
+            send(ex, notes, format);
+            for (Note note : notes) {
+                metrics.increment(note.debit ? RunMetrics.Counter.DEBIT_NOTES : RunMetrics.Counter.CREDIT_NOTES);
+            }
+            if (opts.verbose) System.out.println("✅ " + path + ": " + notes.size() + " note(s) for " + notes.get(0).noteNo);
+
+        } catch (IllegalArgumentException e) {
+            sendError(ex, 400, e.getMessage());
+        } catch (Exception e) {
+            metrics.increment(RunMetrics.Counter.FAILURES);
+            System.err.println("❌ Failed to generate note over HTTP: " + e.getMessage());
+            e.printStackTrace();
+            sendError(ex, 500, e.getClass().getSimpleName() + ": " + e.getMessage());
+        } finally {
+            ex.close();
+        }
+    }
+
+    private void handleHealth(HttpExchange ex) throws IOException {
+        try {
+            String json = "{\"status\": \"ok\""
+                    + ", \"debitNotes\": " + metrics.get(RunMetrics.Counter.DEBIT_NOTES)
+                    + ", \"creditNotes\": " + metrics.get(RunMetrics.Counter.CREDIT_NOTES)
+                    + ", \"failures\": " + metrics.get(RunMetrics.Counter.FAILURES) + "}\n";
+            sendBytes(ex, 200, "application/json", json.getBytes(StandardCharsets.UTF_8), null);
+        } finally {
+            ex.close();
+        }
+    }
+
+    // ---------- Notes ----------
+
+    /** One document to return: file name, manifest values and how to render it. */
+    private static final class Note {
+        final boolean debit;
+        final String baseName;
+        final String noteNo;
+        final double netAmount;
+        final NoteOutput.Renderer renderer;
+
+        Note(boolean debit, String baseName, String noteNo, double netAmount, NoteOutput.Renderer renderer) {
+            this.debit = debit;
+            this.baseName = baseName;
+            this.noteNo = noteNo;
+            this.netAmount = netAmount;
+            this.renderer = renderer;
+        }
+    }
+
+    // Same inputs, fallbacks and calculations as a row of the workbook run
+    private List<Note> buildNotes(Map<String, Object> req, boolean withDebit, boolean withCredits) throws IOException {
+        String debitNoteNo = text(req, "debitNoteNo");
+        if (debitNoteNo.isEmpty()) throw new IllegalArgumentException("\"debitNoteNo\" is required");
+        String docDate = text(req, "documentDate");
+        if (docDate.isEmpty()) docDate = NoteFormats.today();
+        String interest         = text(req, "interest");
+        String insured          = text(req, "insured");
+        String defaultReinsured = text(req, "reinsured");
+        String period           = text(req, "period");
+        String currency         = text(req, "currency");
+        currency = currency.isEmpty() ? opts.currency : RunOptions.parseCurrency(currency);
+
+        PremiumEngine.MainBatch main = new PremiumEngine.MainBatch(1);
+        main.sumInsured[0] = number(req, "sumInsured");
+        main.cedentRate[0] = number(req, "cedentRate");
+        main.reinsRate[0]  = number(req, "reinsuranceRate");
+        main.share[0]      = number(req, "share");
+        main.brokerage[0]  = number(req, "brokerage");
+        main.cedingPct[0]  = number(req, "cedingCommission");
+        if (main.sumInsured[0] == 0 || main.cedentRate[0] == 0 || main.share[0] == 0) {
+            // the workbook run skips such rows as incomplete
+            throw new IllegalArgumentException("\"sumInsured\", \"cedentRate\" and \"share\" must be non-zero");
+        }
+        long calcStart = RunMetrics.start();
+        PremiumEngine.calculateMain(main, 0, 1);
+        metrics.record(RunMetrics.Stage.CALCULATION, calcStart);
+
+        List<Note> notes = new ArrayList<>();
+        if (withDebit) {
+            String[] slots = BrokerDebitCreditGenerator.debitSlots(currency, debitNoteNo, docDate, interest, insured,
+                    defaultReinsured, period, main.sumInsured[0], main.cedentRate[0], main.grossPremiumCedent[0],
+                    main.share[0], main.sharePremiumCedent[0], main.netPremiumFromYou[0]);
+            notes.add(new Note(true, NoteFormats.fileName(debitNoteNo), debitNoteNo, main.netPremiumFromYou[0],
+                    NoteOutput.renderer(NoteTemplate.forPath(templatePath), slots, false, null, null)));
+        }
+        if (!withCredits) return notes;
+
+        List<Map<String, Object>> lines = creditLines(req);
+        PremiumEngine.CreditBatch credit = new PremiumEngine.CreditBatch(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            Map<String, Object> line = lines.get(i);
+            credit.sumInsured[i]    = main.sumInsured[0];
+            credit.cedentRate[i]    = main.cedentRate[0];
+            credit.mainReinsRate[i] = main.reinsRate[0];
+            credit.mainBrokerage[i] = main.brokerage[0];
+            credit.mainCedingPct[i] = main.cedingPct[0];
+            credit.reinsRate[i]     = number(line, "reinsuranceRate");
+            credit.share[i]         = number(line, "reinsurerShare");
+            credit.brokerage[i]     = number(line, "brokerage");
+            credit.cedingPct[i]     = number(line, "cedingCommission");
+        }
+        calcStart = RunMetrics.start();
+        PremiumEngine.calculateCredit(credit, 0, lines.size());
+        metrics.record(RunMetrics.Stage.CALCULATION, calcStart);
+
+        NoteTemplate creditTemplate = NoteTemplate.forPath(creditTemplatePath);
+        for (int i = 0; i < lines.size(); i++) {
+            Map<String, Object> line = lines.get(i);
+            String reinsuredName = text(line, "reinsured");
+            if (reinsuredName.isEmpty()) reinsuredName = defaultReinsured;
+            String reinsurerName = text(line, "reinsurerName");
+            String creditNoteNo  = text(line, "creditNoteNo");
+            if (creditNoteNo.isEmpty()) creditNoteNo = BrokerDebitCreditGenerator.derivedCreditNoteNo(debitNoteNo, reinsurerName);
+            if (reinsurerName.isEmpty()) reinsurerName = "(Reinsurer)";
+
+            String[] slots = BrokerDebitCreditGenerator.creditSlots(currency, creditNoteNo, docDate, interest, insured,
+                    reinsuredName, period, main.sumInsured[0], credit.effectiveReinsRate[i], credit.grossPremium[i],
+                    credit.share[i], credit.sharePremium[i], credit.grossBrokerage[i], credit.netPayable[i]);
+            notes.add(new Note(false, NoteFormats.fileNameWithDots(creditNoteNo), creditNoteNo, credit.netPayable[i],
+                    NoteOutput.renderer(creditTemplate, slots, true, reinsurerName, text(line, "reinsurerAddress"))));
+        }
+        return notes;
+    }
+
+    private static List<Map<String, Object>> creditLines(Map<String, Object> req) {
+        Object value = req.get("credits");
+        if (value == null) return Collections.emptyList();
+        if (!(value instanceof List)) throw new IllegalArgumentException("\"credits\" must be an array of objects");
+        List<Map<String, Object>> lines = new ArrayList<>();
+        for (Object line : (List<?>) value) {
+            if (!(line instanceof Map)) throw new IllegalArgumentException("\"credits\" must be an array of objects");
+            lines.add(asObject(line));
+        }
+        return lines;
+    }
+
+    private void send(HttpExchange ex, List<Note> notes, NoteOutput.Format format) throws IOException {
+        boolean single = notes.size() == 1 && format != NoteOutput.Format.BOTH;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        if (single) {
+            Note note = notes.get(0);
+            boolean pdf = format.pdf();
+            long start = RunMetrics.start();
+            try {
+                note.renderer.render(pdf, bytes);
+            } catch (PdfFonts.Unsupported e) {
+                pdf = false; // answered with the .docx, as a run writes it
+                bytes.reset();
+                note.renderer.render(false, bytes);
+            }
+            metrics.record(RunMetrics.Stage.TEMPLATE_RENDER, start);
+            ex.getResponseHeaders().set("X-Note-No", note.noteNo);
+            sendBytes(ex, 200, pdf ? "application/pdf" : DOCX_TYPE, bytes.toByteArray(),
+                    note.baseName + (pdf ? ".pdf" : ".docx"));
+            return;
+        }
+
+        try (NoteOutput output = NoteOutput.archive(bytes, format, metrics)) {
+            for (Note note : notes) output.write(note.baseName, note.noteNo, note.netAmount, note.renderer);
+            output.finish();
+        }
+        sendBytes(ex, 200, "application/zip", bytes.toByteArray(), NoteFormats.fileName(notes.get(0).noteNo) + ".zip");
+    }
+
+    // ---------- Request helpers ----------
+
+    private NoteOutput.Format formatOf(HttpExchange ex) {
+        String query = ex.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith("format=")) {
+                    String value = URLDecoder.decode(param.substring("format=".length()), StandardCharsets.UTF_8);
+                    switch (value.trim().toLowerCase()) {
+                        case "docx": return NoteOutput.Format.DOCX;
+                        case "pdf":  return NoteOutput.Format.PDF;
+                        case "both": return NoteOutput.Format.BOTH;
+                        default:     throw new IllegalArgumentException("format expects docx, pdf or both: " + value);
+                    }
+                }
+            }
+        }
+        return opts.format;
+    }
+
+    private static String readBody(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES) throw new IllegalArgumentException("Request body larger than " + MAX_BODY_BYTES + " bytes");
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asObject(Object value) {
+        return (Map<String, Object>) value;
+    }
+
+    // Text field; numbers read as a numeric cell would
+    private static String text(Map<String, Object> obj, String field) {
+        Object value = obj.get(field);
+        if (value == null) return "";
+        if (value instanceof String) return ((String) value).trim();
+        if (value instanceof Double) return NoteFormats.cellText((Double) value);
+        throw new IllegalArgumentException("\"" + field + "\" must be a string");
+    }
+
+    // Numeric field; numeric text is accepted with thousands separators, as in the workbook
+    private static double number(Map<String, Object> obj, String field) {
+        Object value = obj.get(field);
+        if (value == null) return 0.0;
+        if (value instanceof Double) return (Double) value;
+        if (value instanceof String) {
+            String s = ((String) value).replace(",", "").trim();
+            if (s.isEmpty()) return 0.0;
+            try {
+                return Double.parseDouble(s);
+            } catch (NumberFormatException e) {
+                // the workbook run would read this as 0.0; an API caller gets told instead
+            }
+        }
+        throw new IllegalArgumentException("\"" + field + "\" must be a number: " + value);
+    }
+
+    // ---------- Responses ----------
+
+    /** Sends an error response; once a response has started, the exchange can only be closed. */
+    private static void sendError(HttpExchange ex, int status, String message) throws IOException {
+        if (ex.getResponseCode() != -1) return; // headers already sent, the caller's finally closes it
+        String json = "{\"error\": \"" + RunMetrics.escapeJson(message == null ? "" : message) + "\"}\n";
+        sendBytes(ex, status, "application/json", json.getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    private static void sendBytes(HttpExchange ex, int status, String contentType, byte[] body, String fileName)
+            throws IOException {
+        ex.getResponseHeaders().set("Content-Type", contentType);
+        if (fileName != null) ex.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.reinsurance.notes;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Destination for generated notes, in one of two modes:
+ * <ul>
+ *   <li>per file (default): one file per note and format (.docx, .pdf or both) under the output folder;</li>
+ *   <li>archive: every note is appended to a single ZIP written sequentially through one open stream,
+ *       with a {@code manifest.csv} (note no., entry name, net amount) added when the run finishes.</li>
+ * </ul>
+ *
+ * In durable mode each file is fsync'ed before the write is reported as done, so a "Processed"
+ * flag set afterwards never points at a note that is still sitting in the OS page cache. An archive is
+ * written as {@code <name>.part} and only renamed (after an fsync) by {@link #finish()}, which the
+ * generator calls before it saves the workbook; a run that fails before that discards the partial
+ * archive on {@link #close()}.
+ *
+ * A note is rendered into a memory buffer first and then written to its file in one go, which
+ * keeps the many small writes of the .docx zip stream off the file and lets {@link RunMetrics} time
+ * template rendering and file writing separately. Buffers come from a small pool, one per core at most,
+ * rather than a {@link ThreadLocal}: virtual render threads are never reused, so a per-thread buffer
+ * would be allocated for every note and then dropped.
+ *
+ * A note the PDF layout refuses ({@link PdfFonts.Unsupported}: a template with a page header, footer or
+ * pictures, or characters the PDF font lacks) is written as .docx instead when only PDF was asked for,
+ * and skipped with {@code both}, which writes the .docx anyway; each reason is reported once on stderr.
+ */
+final class NoteOutput implements Closeable {
+
+    enum Format {
+        DOCX, PDF, BOTH;
+
+        boolean docx() { return this != PDF; }
+        boolean pdf()  { return this != DOCX; }
+    }
+
+    static final String MANIFEST = "manifest.csv";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFER = 4 * 1024 * 1024; // larger buffers are left to the GC
+
+    private final String outputFolder;
+    private final boolean durable;
+    private final Format format;
+    private final RunMetrics metrics;
+    private final ArrayBlockingQueue<ByteArrayOutputStream> buffers =
+            new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+    // reasons already reported for notes that got no PDF: a template problem is reported once, not per note
+    private final Set<String> pdfWarnings = ConcurrentHashMap.newKeySet();
+
+    // archive mode only (guarded by this)
+    private final File archiveFile;
+    private final File archivePart;
+    private ZipOutputStream archive;
+    private FileOutputStream archiveFileStream;
+    private StringBuilder manifest;
+    private Set<String> entryNames;
+
+    NoteOutput(String outputFolder, boolean durable, Format format, RunMetrics metrics) {
+        this.outputFolder = outputFolder;
+        this.durable = durable;
+        this.format = format;
+        this.metrics = metrics;
+        this.archiveFile = null;
+        this.archivePart = null;
+        new File(outputFolder).mkdirs(); // once per run instead of once per note
+    }
+
+    private NoteOutput(File archiveFile, Format format, RunMetrics metrics) throws IOException {
+        this.outputFolder = archiveFile.getAbsoluteFile().getParent() + File.separator;
+        this.durable = false;
+        this.format = format;
+        this.metrics = metrics;
+        this.archiveFile = archiveFile.getAbsoluteFile();
+        this.archivePart = new File(this.archiveFile.getPath() + ".part");
+        this.archiveFile.getParentFile().mkdirs();
+        this.archiveFileStream = new FileOutputStream(archivePart);
+        this.archive = new ZipOutputStream(new BufferedOutputStream(archiveFileStream, 256 * 1024));
+        this.manifest = new StringBuilder("Note No.,Entry,Net Amount\n");
+        this.entryNames = new HashSet<>();
+    }
+
+    private NoteOutput(OutputStream target, Format format, RunMetrics metrics) {
+        this.outputFolder = null;
+        this.durable = false;
+        this.format = format;
+        this.metrics = metrics;
+        this.archiveFile = null;
+        this.archivePart = null;
+        this.archive = new ZipOutputStream(target);
+        this.manifest = new StringBuilder("Note No.,Entry,Net Amount\n");
+        this.entryNames = new HashSet<>();
+    }
+
+    /** Archive mode: all notes of the run go into {@code archiveFile}. */
+    static NoteOutput archive(File archiveFile, Format format, RunMetrics metrics) throws IOException {
+        return new NoteOutput(archiveFile, format, metrics);
+    }
+
+    /** Archive mode over a stream (e.g. an HTTP response buffer); {@link #finish()} closes {@code target}. */
+    static NoteOutput archive(OutputStream target, Format format, RunMetrics metrics) {
+        return new NoteOutput(target, format, metrics);
+    }
+
+    String getOutputFolder() {
+        return outputFolder;
+    }
+
+    boolean isArchive() {
+        return manifest != null;
+    }
+
+    /** Archive written by {@link #finish()}; {@code null} in per-file and stream mode. */
+    File getArchiveFile() {
+        return archiveFile;
+    }
+
+    /** Renders one document into {@code out}, as .docx or as PDF. */
+    interface Renderer {
+        void render(boolean pdf, OutputStream out) throws IOException;
+    }
+
+    /**
+     * Renders {@code template} as {@code <baseName>.docx} and/or {@code .pdf}, either into the output
+     * folder or into the archive; {@code noteNo} and {@code netAmount} go into the archive manifest.
+     */
+    void write(String baseName, String noteNo, double netAmount, NoteTemplate template, String[] slots,
+               boolean replaceTo, String toName, String toAddress) throws IOException {
+        write(baseName, noteNo, netAmount, renderer(template, slots, replaceTo, toName, toAddress));
+    }
+
+    /** Renders {@code template} with the note's values, as .docx or through its PDF layout. */
+    static Renderer renderer(NoteTemplate template, String[] slots, boolean replaceTo, String toName, String toAddress) {
+        return (pdf, out) -> {
+            if (pdf) template.pdfLayout().render(slots, replaceTo, toName, toAddress, out);
+            else     template.render(slots, replaceTo, toName, toAddress, out);
+        };
+    }
+
+    /** Writes a document built by {@code renderer} in the configured format(s). */
+    void write(String baseName, String noteNo, double netAmount, Renderer renderer) throws IOException {
+        ByteArrayOutputStream bytes = buffers.poll();
+        if (bytes == null) bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+        try {
+            if (format.docx()) write(false, baseName, noteNo, netAmount, renderer, bytes);
+            if (format.pdf()) {
+                try {
+                    write(true, baseName, noteNo, netAmount, renderer, bytes);
+                } catch (PdfFonts.Unsupported e) {
+                    if (pdfWarnings.add(e.getMessage())) {
+                        System.err.println("⚠️ No PDF for " + baseName + ": " + e.getMessage()
+                                + (format.docx() ? "" : "; notes like it are written as .docx instead"));
+                    }
+                    if (!format.docx()) write(false, baseName, noteNo, netAmount, renderer, bytes);
+                }
+            }
+        } finally {
+            if (bytes.size() <= MAX_POOLED_BUFFER) {
+                bytes.reset();
+                buffers.offer(bytes); // dropped when the pool is full
+            }
+        }
+    }
+
+    private void write(boolean pdf, String baseName, String noteNo, double netAmount, Renderer renderer,
+                       ByteArrayOutputStream bytes) throws IOException {
+        long start = RunMetrics.start();
+        bytes.reset();
+        renderer.render(pdf, bytes);
+        metrics.record(RunMetrics.Stage.TEMPLATE_RENDER, start);
+        store(baseName + (pdf ? ".pdf" : ".docx"), noteNo, netAmount, bytes);
+    }
+
+    private void store(String fileName, String noteNo, double netAmount, ByteArrayOutputStream bytes)
+            throws IOException {
+        long start = RunMetrics.start();
+        if (isArchive()) {
+            addEntry(fileName, noteNo, netAmount, bytes);
+        } else {
+            try (FileOutputStream fos = new FileOutputStream(outputFolder + fileName)) {
+                bytes.writeTo(fos);
+                if (durable) fos.getFD().sync();
+            }
+        }
+        metrics.record(RunMetrics.Stage.FILE_WRITE, start);
+    }
+
+    // ---------- Archive ----------
+
+    private synchronized void addEntry(String fileName, String noteNo, double netAmount, ByteArrayOutputStream bytes)
+            throws IOException {
+        if (archive == null) throw new IOException("Archive already closed: " + archiveFile);
+
+        // a second note with the same file name would overwrite the first in per-file mode; keep both here
+        String name = fileName;
+        for (int n = 2; !entryNames.add(name); n++) {
+            int dot = fileName.lastIndexOf('.');
+            name = fileName.substring(0, dot) + "~" + n + fileName.substring(dot);
+        }
+
+        // .docx and .pdf are compressed already: store them instead of deflating a second time
+        byte[] data = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+        archive.putNextEntry(entry);
+        archive.write(data);
+        archive.closeEntry();
+
+        manifest.append(csv(noteNo)).append(',').append(csv(name)).append(',')
+                .append(BigDecimal.valueOf(netAmount).toPlainString()).append('\n');
+    }
+
+    /** Adds the manifest and moves the finished archive into place. No-op in per-file mode. */
+    synchronized void finish() throws IOException {
+        if (archive == null) return;
+        archive.putNextEntry(new ZipEntry(MANIFEST));
+        archive.write(manifest.toString().getBytes(StandardCharsets.UTF_8));
+        archive.closeEntry();
+        archive.finish();
+        archive.flush();
+        if (archiveFileStream != null) archiveFileStream.getFD().sync();
+        archive.close();
+        archive = null;
+        if (archivePart == null) return; // stream mode
+        try {
+            Files.move(archivePart.toPath(), archiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(archivePart.toPath(), archiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Discards an archive that was never {@link #finish()}ed. */
+    @Override
+    public synchronized void close() throws IOException {
+        if (archive == null) return;
+        try {
+            archive.close();
+        } finally {
+            archive = null;
+            if (archivePart != null) Files.deleteIfExists(archivePart.toPath());
+        }
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
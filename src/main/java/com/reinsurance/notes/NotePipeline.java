@@ -0,0 +1,144 @@
+package com.reinsurance.notes;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs note rendering either inline (serial mode) or on a bounded worker pool.
+ *
+ * Workbook reads and writes stay on the calling thread: the {@code onWritten} and {@code onFailure}
+ * callbacks are always invoked on the thread that calls {@link #submit} / {@link #awaitAll}, in
+ * submission order, and only after the render task has returned. Callers use them to set the
+ * "Processed" flag and log, so no POI workbook object is ever touched from a worker thread.
+ */
+final class NotePipeline implements AutoCloseable {
+
+    interface NoteTask {
+        void write() throws Exception;
+    }
+
+    interface Completion {
+        void run() throws IOException;
+    }
+
+    interface Failure {
+        void accept(Exception e) throws IOException;
+    }
+
+    private static final class Pending {
+        final Future<?> future;
+        final Completion onWritten;
+        final Failure onFailure;
+
+        Pending(Future<?> future, Completion onWritten, Failure onFailure) {
+            this.future = future;
+            this.onWritten = onWritten;
+            this.onFailure = onFailure;
+        }
+    }
+
+    private final ExecutorService pool;       // null = serial
+    private final Semaphore inFlight;
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private boolean closed;
+
+    private NotePipeline(ExecutorService pool, int maxInFlight) {
+        this.pool = pool;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    static NotePipeline serial() {
+        return new NotePipeline(null, 1);
+    }
+
+    /** @param threads worker count, or {@link WorkerPools#VIRTUAL} */
+    static NotePipeline parallel(int threads) {
+        int bound = (threads == WorkerPools.VIRTUAL ? Runtime.getRuntime().availableProcessors() : threads) * 4;
+        return new NotePipeline(WorkerPools.newPool("note-writer", threads), bound);
+    }
+
+    static NotePipeline forThreads(int threads) {
+        return (threads == 1) ? serial() : parallel(threads);
+    }
+
+    boolean isParallel() {
+        return pool != null;
+    }
+
+    void submit(NoteTask task, Completion onWritten, Failure onFailure) throws InterruptedException, IOException {
+        if (pool == null) {
+            try {
+                task.write();
+            } catch (Exception e) {
+                onFailure.accept(e);
+                return;
+            }
+            onWritten.run();
+            return;
+        }
+
+        inFlight.acquire(); // blocks the reader when workers fall behind
+        Future<?> future;
+        try {
+            future = pool.submit(() -> {
+                try {
+                    task.write();
+                    return null;
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        pending.add(new Pending(future, onWritten, onFailure));
+        completeFinished(false);
+    }
+
+    /**
+     * Waits for every submitted note and runs the remaining callbacks. An interrupt while waiting is
+     * rethrown as {@link InterruptedIOException} with the thread's interrupt status kept.
+     */
+    void awaitAll() throws IOException {
+        try {
+            completeFinished(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException ie = new InterruptedIOException("Interrupted waiting for " + pending.size() + " notes");
+            ie.initCause(e);
+            throw ie;
+        }
+    }
+
+    /** {@link #awaitAll()}, then shuts the pool down; later calls do nothing. */
+    @Override
+    public void close() throws IOException {
+        if (closed || pool == null) return;
+        closed = true;
+        try {
+            awaitAll();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void completeFinished(boolean waitForAll) throws InterruptedException, IOException {
+        while (!pending.isEmpty() && (waitForAll || pending.peek().future.isDone())) {
+            Pending p = pending.poll();
+            try {
+                p.future.get();
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                p.onFailure.accept(cause instanceof Exception ? (Exception) cause : new RuntimeException(cause));
+                continue;
+            }
+            p.onWritten.run();
+        }
+    }
+}
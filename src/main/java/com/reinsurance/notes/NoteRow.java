@@ -0,0 +1,28 @@
+package com.reinsurance.notes;
+
+/**
+ * One worksheet row as seen by the note generator, independent of how the workbook is read.
+ *
+ * Cell semantics follow the original POI helpers: strings are trimmed, numeric cells read as text
+ * come back as {@code String.valueOf(double)}, and any other cell type (blank, formula, boolean,
+ * error) reads as {@code ""} / {@code 0.0}.
+ */
+interface NoteRow {
+
+    /** 0-based row index within its sheet. */
+    int getRowNum();
+
+    /** One past the last cell index, or -1 when the row has no cells. */
+    int getLastCellNum();
+
+    /** True when input columns 0-10 hold no text and no non-zero number. */
+    boolean isEmpty();
+
+    String getString(int idx);
+
+    double getDouble(int idx);
+
+    void setString(int idx, String val);
+
+    void setNumeric(int idx, double val);
+}
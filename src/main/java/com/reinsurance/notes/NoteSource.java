@@ -0,0 +1,42 @@
+package com.reinsurance.notes;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Where the generator reads its rows from and where calculated values end up.
+ *
+ * {@link PoiNoteSource} edits the workbook in memory and rewrites it on {@link #save()};
+ * {@link StreamingNoteSource} reads the workbook with SAX and writes results to a separate workbook.
+ */
+interface NoteSource extends AutoCloseable {
+
+    interface MainRowHandler {
+        /** @param row the row, or {@code null} when the sheet has no row at index {@code r} */
+        void handle(int r, NoteRow row) throws Exception;
+    }
+
+    /** Lower-cased "CreditNoteDetails" header names to column index; empty when the sheet is missing. */
+    Map<String,Integer> getCreditHeader();
+
+    /** Data rows of "CreditNoteDetails" in sheet order (header excluded). */
+    Iterable<NoteRow> getCreditRows();
+
+    /** Visits main-sheet rows 1..last in order. */
+    void forEachMainRow(MainRowHandler handler) throws Exception;
+
+    /** Called once a main row's debit note has been written (or has failed). */
+    void mainRowDone(NoteRow row) throws IOException;
+
+    /** Called once a credit row's note has been written (or has failed). */
+    void creditRowDone(NoteRow row) throws IOException;
+
+    /** Persists calculated values and "Processed" flags. */
+    void save() throws IOException;
+
+    /** Human-readable description of what {@link #save()} wrote. */
+    String describeSaveTarget();
+
+    @Override
+    void close() throws IOException;
+}
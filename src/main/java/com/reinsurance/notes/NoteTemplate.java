@@ -0,0 +1,217 @@
+package com.reinsurance.notes;
+
+import org.apache.poi.xwpf.usermodel.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A Word note template (debit or credit) loaded once and rendered many times.
+ *
+ * The .docx bytes are read from disk a single time and parsed into {@link XWPFDocument}s with the value
+ * cells (table 0, rows 0-13, column 2) and the "To," paragraph resolved up front; a note is then rendered
+ * by overwriting only those slots and writing the package. Parsed documents are kept in a pool of idle
+ * copies: a render borrows one and hands it back, so concurrent renders never share a document and a
+ * copy outlives the thread that parsed it (virtual threads and HTTP requests are one task each). The
+ * pool holds at most {@link #MAX_IDLE} copies; a burst of concurrent renders parses extra copies, which
+ * are dropped again when the pool is full, so memory stays bounded however many threads render.
+ * Every render rewrites the same slots from scratch, so the written document matches what a fresh
+ * parse of the template would produce. Templates whose slot cells hold more than one paragraph
+ * cannot be reset that way and are re-parsed from the cached bytes for every note instead.
+ *
+ * The PDF layout of the same template ({@link PdfNoteLayout}) is built from the cached bytes on first
+ * use and shared by all threads.
+ */
+final class NoteTemplate {
+
+    static final int SLOT_ROWS = 14;
+    static final int SLOT_COL  = 2;
+
+    private static final Map<String, NoteTemplate> CACHE = new ConcurrentHashMap<>();
+    private static final int MAX_IDLE = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final String path;
+    private final byte[] source;
+    private final long lastModified;
+    private final boolean reusable;
+    private final ArrayBlockingQueue<Compiled> idle = new ArrayBlockingQueue<>(MAX_IDLE);
+    private volatile PdfNoteLayout pdfLayout;
+
+    private NoteTemplate(String path, byte[] source, long lastModified) throws IOException {
+        this.path = path;
+        this.source = source;
+        this.lastModified = lastModified;
+        Compiled first = compile();
+        this.reusable = first.isResettable();
+        if (reusable) idle.offer(first);
+        else first.doc.close();
+    }
+
+    /** Returns the cached template for {@code path}, loading it on first use. */
+    static NoteTemplate forPath(String path) throws IOException {
+        NoteTemplate template = CACHE.get(path);
+        if (template == null) {
+            File file = new File(path);
+            long lastModified = file.lastModified(); // before reading, so an edit during the read counts as a change
+            template = new NoteTemplate(path, Files.readAllBytes(file.toPath()), lastModified);
+            NoteTemplate existing = CACHE.putIfAbsent(path, template);
+            if (existing != null) template = existing;
+        }
+        return template;
+    }
+
+    /**
+     * Drops the cached template for {@code path} if the file was replaced since it was loaded, so the
+     * next {@link #forPath} reads it again. Used by the service mode between jobs; a plain run never
+     * sees its templates change.
+     */
+    static void evictIfChanged(String path) {
+        NoteTemplate template = CACHE.get(path);
+        if (template == null) return;
+        File file = new File(path);
+        if (file.lastModified() != template.lastModified || file.length() != template.source.length) {
+            CACHE.remove(path, template);
+        }
+    }
+
+    /** PDF layout of this template, built once. */
+    PdfNoteLayout pdfLayout() throws IOException {
+        PdfNoteLayout layout = pdfLayout;
+        if (layout == null) {
+            synchronized (this) {
+                layout = pdfLayout;
+                if (layout == null) pdfLayout = layout = PdfNoteLayout.fromTemplate(source, path);
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Renders one note.
+     *
+     * @param slotText     text per table row (index 0-13); {@code null} leaves that row as in the template
+     * @param replaceTo    whether to rewrite the "To," block
+     * @param toName       name line of the "To," block
+     * @param toAddress    optional address (multi-line separated by \n)
+     */
+    void render(String[] slotText, boolean replaceTo, String toName, String toAddress, OutputStream out)
+            throws IOException {
+
+        int signature = signatureOf(slotText, replaceTo);
+        Compiled c = reusable ? idle.poll() : null;
+        if (c != null && c.signature != 0 && c.signature != signature) {
+            c.doc.close();
+            c = null;
+        }
+        if (c == null) c = compile();
+
+        boolean keep = false;
+        try {
+            if (c.table == null) throw new IllegalStateException("Template has no table: " + path);
+            if (replaceTo) writeToBlock(c.toBlock, toName, toAddress);
+            for (int r = 0; r < SLOT_ROWS && r < slotText.length; r++) {
+                if (slotText[r] != null) setCellText(c.slots[r], slotText[r]);
+            }
+            c.signature = signature;
+            c.doc.write(out);
+            keep = reusable; // on failure the slots may be half-written; the copy is dropped
+        } finally {
+            if (!keep || !idle.offer(c)) c.doc.close(); // also dropped when the pool is full
+        }
+    }
+
+    // ---------- Compilation ----------
+
+    private Compiled compile() throws IOException {
+        XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(source));
+
+        XWPFTableCell[] slots = new XWPFTableCell[SLOT_ROWS];
+        List<XWPFTable> tables = doc.getTables();
+        if (!tables.isEmpty()) {
+            XWPFTable table = tables.get(0);
+            for (int r = 0; r < SLOT_ROWS; r++) {
+                XWPFTableRow row = table.getRow(r);
+                if (row != null) slots[r] = row.getCell(SLOT_COL);
+            }
+        }
+
+        XWPFParagraph toBlock = null;
+        for (XWPFParagraph para : doc.getParagraphs()) {
+            String text = para.getText();
+            if (text != null && text.trim().toLowerCase().startsWith("to")) {
+                toBlock = para;
+                break;
+            }
+        }
+        return new Compiled(doc, tables.isEmpty() ? null : tables.get(0), slots, toBlock);
+    }
+
+    private static int signatureOf(String[] slotText, boolean replaceTo) {
+        int sig = replaceTo ? 1 : 0;
+        for (int r = 0; r < SLOT_ROWS && r < slotText.length; r++) {
+            if (slotText[r] != null) sig |= 1 << (r + 1);
+        }
+        return sig;
+    }
+
+    private static final class Compiled {
+        final XWPFDocument doc;
+        final XWPFTable table;
+        final XWPFTableCell[] slots;
+        final XWPFParagraph toBlock;
+        int signature; // slots written by the last render; 0 = untouched
+
+        Compiled(XWPFDocument doc, XWPFTable table, XWPFTableCell[] slots, XWPFParagraph toBlock) {
+            this.doc = doc;
+            this.table = table;
+            this.slots = slots;
+            this.toBlock = toBlock;
+        }
+
+        // Slots can be rewritten in place only when each holds exactly one paragraph.
+        boolean isResettable() {
+            for (XWPFTableCell cell : slots) {
+                if (cell != null && (cell.getBodyElements().size() != 1 || cell.getParagraphs().size() != 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // ---------- Word helpers ----------
+
+    private static void setCellText(XWPFTableCell cell, String text) {
+        if (cell != null) {
+            cell.removeParagraph(0);
+            cell.setText(text);
+        }
+    }
+
+    // Replace the “To,” block with Name + Address
+    private static void writeToBlock(XWPFParagraph para, String reinsurerName, String reinsurerAddress) {
+        if (para == null) return;
+        for (int i = para.getRuns().size() - 1; i >= 0; i--) {
+            para.removeRun(i);
+        }
+        XWPFRun run = para.createRun();
+        run.setText("To,");
+        run.addBreak();
+        if (reinsurerName != null && !reinsurerName.isEmpty()) {
+            run.setText(reinsurerName);
+            if (reinsurerAddress != null && !reinsurerAddress.trim().isEmpty()) {
+                run.addBreak();
+                // support multi-line address separated by \n
+                String[] lines = reinsurerAddress.split("\\r?\\n");
+                for (int i = 0; i < lines.length; i++) {
+                    if (i > 0) run.addBreak();
+                    run.setText(lines[i]);
+                }
+            }
+        }
+    }
+}
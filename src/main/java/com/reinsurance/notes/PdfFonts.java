@@ -0,0 +1,119 @@
+package com.reinsurance.notes;
+
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Font;
+import com.lowagie.text.pdf.BaseFont;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Fonts of one PDF document: OpenPDF's built-in Helvetica or an embedded TrueType font.
+ *
+ * Helvetica only encodes WinAnsi (Latin-1 and a few signs), so a Greek, Cyrillic or Turkish reinsurer
+ * name drawn with it loses its letters without an error. A document whose text Helvetica cannot show
+ * is therefore drawn with the first TrueType font found in the usual system locations (Arial on Windows
+ * and macOS, DejaVu Sans on Linux), embedded as a subset. Latin text keeps Helvetica: embedding costs
+ * about twice the render time and ten times the file size, for no visible difference. The font files
+ * are read into memory once, so every render thread shares the same parsed fonts.
+ *
+ * Text neither font can show (CJK names with Arial, say) is refused with {@link Unsupported} before
+ * anything is drawn; {@link NoteOutput} then writes the document as .docx, where Word picks a font.
+ */
+final class PdfFonts {
+
+    // regular and bold file of each candidate, in search order
+    private static final String[][] CANDIDATES = {
+            {"C:/Windows/Fonts/arial.ttf", "C:/Windows/Fonts/arialbd.ttf"},
+            {"/System/Library/Fonts/Supplemental/Arial.ttf", "/System/Library/Fonts/Supplemental/Arial Bold.ttf"},
+            {"/Library/Fonts/Arial.ttf", "/Library/Fonts/Arial Bold.ttf"},
+            {"/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf", "/usr/share/fonts/truetype/dejavu/DejaVuSans-Bold.ttf"},
+            {"/usr/share/fonts/dejavu/DejaVuSans.ttf", "/usr/share/fonts/dejavu/DejaVuSans-Bold.ttf"},
+            {"/usr/share/fonts/TTF/DejaVuSans.ttf", "/usr/share/fonts/TTF/DejaVuSans-Bold.ttf"},
+    };
+
+    /** Built-in Helvetica, not embedded. */
+    static final PdfFonts STANDARD = builtIn();
+
+    /** The first TrueType font found, or {@code null} if none is installed. */
+    static final PdfFonts EMBEDDED = embedded();
+
+    private final BaseFont regular;
+    private final BaseFont bold;
+
+    private PdfFonts(BaseFont regular, BaseFont bold) {
+        this.regular = regular;
+        this.bold = bold;
+    }
+
+    Font font(boolean bold, float size) {
+        return new Font(bold ? this.bold : regular, size);
+    }
+
+    /** Whether these fonts can show every character of {@code text}. */
+    boolean covers(String text) {
+        if (text == null) return true;
+        for (int i = 0; i < text.length(); ) {
+            int c = text.codePointAt(i);
+            i += Character.charCount(c);
+            if (Character.isWhitespace(c) || Character.isISOControl(c)) continue;
+            if (!regular.charExists(c) || !bold.charExists(c)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code fonts} if they can show all of {@code texts}, else the embedded font.
+     *
+     * @throws Unsupported if neither can
+     */
+    static PdfFonts forText(PdfFonts fonts, String... texts) throws Unsupported {
+        for (String text : texts) {
+            if (fonts.covers(text)) continue;
+            if (EMBEDDED == null || !EMBEDDED.covers(text)) {
+                throw new Unsupported("\"" + text + "\" has characters the PDF font ("
+                        + (EMBEDDED == null ? fonts : EMBEDDED).regular.getPostscriptFontName() + ") cannot show");
+            }
+            fonts = EMBEDDED;
+        }
+        return fonts;
+    }
+
+    /** A document that cannot be drawn faithfully as PDF; {@link NoteOutput} writes it as .docx instead. */
+    static final class Unsupported extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported(String message) {
+            super(message);
+        }
+    }
+
+    private static PdfFonts embedded() {
+        for (String[] candidate : CANDIDATES) {
+            File regular = new File(candidate[0]);
+            File bold = new File(candidate[1]);
+            if (!regular.isFile() || !bold.isFile()) continue;
+            try {
+                return new PdfFonts(trueType(regular), trueType(bold));
+            } catch (IOException | DocumentException e) {
+                // unreadable or not a TrueType font: try the next candidate
+            }
+        }
+        return null;
+    }
+
+    private static BaseFont trueType(File file) throws IOException, DocumentException {
+        return BaseFont.createFont(file.getName(), BaseFont.IDENTITY_H, BaseFont.EMBEDDED, false,
+                Files.readAllBytes(file.toPath()), null);
+    }
+
+    private static PdfFonts builtIn() {
+        try {
+            return new PdfFonts(BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.NOT_EMBEDDED),
+                    BaseFont.createFont(BaseFont.HELVETICA_BOLD, BaseFont.WINANSI, BaseFont.NOT_EMBEDDED));
+        } catch (IOException | DocumentException e) {
+            throw new IllegalStateException("OpenPDF's built-in Helvetica is missing", e);
+        }
+    }
+}
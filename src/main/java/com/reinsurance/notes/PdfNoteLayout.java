@@ -0,0 +1,340 @@
+package com.reinsurance.notes;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Element;
+import com.lowagie.text.Font;
+import com.lowagie.text.PageSize;
+import com.lowagie.text.Paragraph;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.pdf.PdfPCell;
+import com.lowagie.text.pdf.PdfPTable;
+import com.lowagie.text.pdf.PdfWriter;
+import org.apache.poi.xwpf.usermodel.*;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTblGrid;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTblGridCol;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTcPr;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.STMerge;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * PDF rendering of a note, laid out after its Word template.
+ *
+ * The template is read once: its paragraphs (text, alignment, bold, size), the "To," paragraph and the
+ * first table with its labels, column widths, merged cells and default cell text. Each note then only
+ * lays those blocks out again with the note's values in the slot cells (column 2, rows 0-13) and, for
+ * credit notes, the reinsurer in the "To," block, so a PDF carries exactly the fields the .docx does.
+ * Text is drawn in Helvetica, or in an embedded TrueType font when a note has characters outside
+ * WinAnsi (see {@link PdfFonts}). Layout objects are immutable and shared by all render threads.
+ *
+ * Header and footer parts, pictures and run formatting other than bold and size are not drawn. Rather
+ * than leave them out silently, a template with header or footer text or with pictures, and a note with
+ * characters the PDF font cannot show, are refused with {@link PdfFonts.Unsupported}, and
+ * {@link NoteOutput} writes that note as .docx instead.
+ */
+final class PdfNoteLayout {
+
+    private static final float DEFAULT_FONT_SIZE = 10f;
+
+    private final List<Block> blocks;
+    private final String source;
+    private final PdfFonts fonts;     // fonts the template text needs
+    private final String unsupported; // why the template cannot be drawn, or null
+
+    private PdfNoteLayout(List<Block> blocks, String source, PdfFonts fonts, String unsupported) {
+        this.blocks = blocks;
+        this.source = source;
+        this.fonts = fonts;
+        this.unsupported = unsupported;
+    }
+
+    /** Builds the layout from the .docx bytes of a note template. */
+    static PdfNoteLayout fromTemplate(byte[] docx, String path) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        String unsupported;
+        try (XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(docx))) {
+            XWPFParagraph toParagraph = null;
+            for (XWPFParagraph para : doc.getParagraphs()) {
+                String text = para.getText();
+                if (text != null && text.trim().toLowerCase().startsWith("to")) {
+                    toParagraph = para;
+                    break;
+                }
+            }
+
+            boolean firstTable = true;
+            for (IBodyElement element : doc.getBodyElements()) {
+                if (element instanceof XWPFParagraph) {
+                    XWPFParagraph para = (XWPFParagraph) element;
+                    blocks.add(new TextBlock(para, para == toParagraph));
+                } else if (element instanceof XWPFTable) {
+                    blocks.add(new TableBlock((XWPFTable) element, firstTable));
+                    firstTable = false;
+                }
+            }
+            unsupported = unsupportedContent(doc);
+        }
+        PdfFonts fonts = PdfFonts.STANDARD;
+        try {
+            for (Block block : blocks) fonts = PdfFonts.forText(fonts, block.texts());
+        } catch (PdfFonts.Unsupported e) {
+            if (unsupported == null) unsupported = "has text the PDF font cannot show";
+        }
+        return new PdfNoteLayout(blocks, path, fonts, unsupported == null ? null : "template " + path + " " + unsupported);
+    }
+
+    /**
+     * Renders one note; arguments as for {@link NoteTemplate#render}.
+     *
+     * @throws PdfFonts.Unsupported if the template or the note's text cannot be drawn faithfully
+     */
+    void render(String[] slotText, boolean replaceTo, String toName, String toAddress, OutputStream out)
+            throws IOException {
+
+        if (unsupported != null) throw new PdfFonts.Unsupported(unsupported);
+        PdfFonts fonts = PdfFonts.forText(this.fonts, slotText);
+        if (replaceTo) fonts = PdfFonts.forText(fonts, toName, toAddress);
+
+        Document doc = new Document(PageSize.A4, 56, 56, 56, 56);
+        try {
+            PdfWriter.getInstance(doc, out);
+            doc.open();
+            for (Block block : blocks) {
+                doc.add(block.toElement(fonts, slotText, replaceTo, toName, toAddress));
+            }
+        } catch (DocumentException e) {
+            throw new IOException("Unable to render PDF from " + source + ": " + e.getMessage(), e);
+        } finally {
+            if (doc.isOpen()) doc.close();
+        }
+    }
+
+    // ---------- Blocks ----------
+
+    private interface Block {
+        Element toElement(PdfFonts fonts, String[] slotText, boolean replaceTo, String toName, String toAddress)
+                throws DocumentException;
+
+        /** The template text of this block. */
+        String[] texts();
+    }
+
+    private static final class TextBlock implements Block {
+        final String text;
+        final int alignment;
+        final boolean bold;
+        final float size;
+        final boolean toBlock;
+
+        TextBlock(XWPFParagraph para, boolean toBlock) {
+            String text = para.getText();
+            this.text = text == null ? "" : text;
+            this.alignment = alignmentOf(para);
+            boolean bold = false;
+            float size = DEFAULT_FONT_SIZE;
+            for (XWPFRun run : para.getRuns()) {
+                bold |= run.isBold();
+                Double runSize = run.getFontSizeAsDouble();
+                if (runSize != null) size = runSize.floatValue();
+            }
+            this.bold = bold;
+            this.size = size;
+            this.toBlock = toBlock;
+        }
+
+        @Override
+        public Element toElement(PdfFonts fonts, String[] slotText, boolean replaceTo, String toName, String toAddress) {
+            String content = (toBlock && replaceTo) ? toBlockText(toName, toAddress) : text;
+            // an empty Word paragraph still takes up a line
+            Paragraph p = new Paragraph(content.isEmpty() ? " " : content, fonts.font(bold, size));
+            p.setAlignment(alignment);
+            return p;
+        }
+
+        @Override
+        public String[] texts() {
+            return new String[] {text};
+        }
+    }
+
+    /** One drawn table cell; {@code index} is its position among the Word cells of its row. */
+    private static final class Cell {
+        final String text;
+        final int index;
+        final int colspan;
+        final int rowspan;
+
+        Cell(String text, int index, int colspan, int rowspan) {
+            this.text = text;
+            this.index = index;
+            this.colspan = colspan;
+            this.rowspan = rowspan;
+        }
+    }
+
+    private static final class TableBlock implements Block {
+        final Cell[][] rows; // continuations of vertically merged cells are left out
+        final float[] widths;
+        final boolean slots; // the first table holds the note values
+
+        TableBlock(XWPFTable table, boolean slots) {
+            List<XWPFTableRow> tableRows = table.getRows();
+            int columns = 0;
+            for (XWPFTableRow row : tableRows) {
+                int span = 0;
+                for (XWPFTableCell cell : row.getTableCells()) span += gridSpan(cell);
+                columns = Math.max(columns, span);
+            }
+
+            // last row covered by a cell above (vMerge) or by a drawn cell, per grid column
+            int[] coveredTo = new int[columns];
+            Arrays.fill(coveredTo, -1);
+            this.rows = new Cell[tableRows.size()][];
+            for (int r = 0; r < rows.length; r++) {
+                List<Cell> drawn = new ArrayList<>();
+                List<XWPFTableCell> cells = tableRows.get(r).getTableCells();
+                int col = 0;
+                for (int i = 0; i < cells.size(); i++) {
+                    XWPFTableCell cell = cells.get(i);
+                    int colspan = gridSpan(cell);
+                    if (!(isMergeContinue(cell) && coveredTo[col] >= r)) {
+                        int rowspan = 1;
+                        if (isMergeRestart(cell)) {
+                            while (r + rowspan < rows.length && isMergeContinue(cellAt(tableRows.get(r + rowspan), col))) {
+                                rowspan++;
+                            }
+                        }
+                        for (int c = col; c < col + colspan; c++) coveredTo[c] = r + rowspan - 1;
+                        drawn.add(new Cell(cell.getText(), i, colspan, rowspan));
+                    }
+                    col += colspan;
+                }
+                // a short row is padded with empty cells, as Word draws it
+                for (int c = 0; c < columns; c++) {
+                    if (coveredTo[c] < r) drawn.add(new Cell("", -1, 1, 1));
+                }
+                rows[r] = drawn.toArray(new Cell[0]);
+            }
+            this.widths = gridWidths(table, columns);
+            this.slots = slots;
+        }
+
+        @Override
+        public Element toElement(PdfFonts fonts, String[] slotText, boolean replaceTo, String toName, String toAddress)
+                throws DocumentException {
+            Font font = fonts.font(false, DEFAULT_FONT_SIZE);
+            PdfPTable table = new PdfPTable(widths.length);
+            table.setWidthPercentage(100);
+            table.setWidths(widths);
+            table.setSpacingBefore(8);
+            table.setSpacingAfter(8);
+            for (int r = 0; r < rows.length; r++) {
+                for (Cell c : rows[r]) {
+                    String text = c.text;
+                    if (slots && c.index == NoteTemplate.SLOT_COL && r < NoteTemplate.SLOT_ROWS
+                            && r < slotText.length && slotText[r] != null) {
+                        text = slotText[r];
+                    }
+                    PdfPCell cell = new PdfPCell(new Phrase(text, font));
+                    cell.setPadding(4);
+                    cell.setColspan(c.colspan);
+                    cell.setRowspan(c.rowspan);
+                    table.addCell(cell);
+                }
+            }
+            return table;
+        }
+
+        @Override
+        public String[] texts() {
+            List<String> texts = new ArrayList<>();
+            for (Cell[] row : rows) {
+                for (Cell cell : row) texts.add(cell.text);
+            }
+            return texts.toArray(new String[0]);
+        }
+    }
+
+    // ---------- Template reading ----------
+
+    // Same text as NoteTemplate's "To," block: name, then the address lines
+    static String toBlockText(String toName, String toAddress) {
+        StringBuilder sb = new StringBuilder("To,\n");
+        if (toName != null && !toName.isEmpty()) {
+            sb.append(toName);
+            if (toAddress != null && !toAddress.trim().isEmpty()) {
+                for (String line : toAddress.split("\\r?\\n")) sb.append('\n').append(line);
+            }
+        }
+        return sb.toString();
+    }
+
+    // Content the layout does not draw; an empty header or footer part (Word adds them freely) is fine
+    private static String unsupportedContent(XWPFDocument doc) {
+        for (XWPFHeader header : doc.getHeaderList()) {
+            if (!header.getText().isBlank() || !header.getAllPictures().isEmpty()) return "has a page header";
+        }
+        for (XWPFFooter footer : doc.getFooterList()) {
+            if (!footer.getText().isBlank() || !footer.getAllPictures().isEmpty()) return "has a page footer";
+        }
+        if (!doc.getAllPictures().isEmpty()) return "has pictures";
+        return null;
+    }
+
+    private static int gridSpan(XWPFTableCell cell) {
+        CTTcPr pr = cell.getCTTc().getTcPr();
+        if (pr == null || !pr.isSetGridSpan()) return 1;
+        return Math.max(1, pr.getGridSpan().getVal().intValue());
+    }
+
+    private static boolean isMergeRestart(XWPFTableCell cell) {
+        CTTcPr pr = cell.getCTTc().getTcPr();
+        return pr != null && pr.isSetVMerge() && pr.getVMerge().getVal() == STMerge.RESTART;
+    }
+
+    // a vMerge without a value continues the cell above
+    private static boolean isMergeContinue(XWPFTableCell cell) {
+        CTTcPr pr = cell == null ? null : cell.getCTTc().getTcPr();
+        return pr != null && pr.isSetVMerge() && pr.getVMerge().getVal() != STMerge.RESTART;
+    }
+
+    // the cell of a row that starts at grid column col, or null
+    private static XWPFTableCell cellAt(XWPFTableRow row, int col) {
+        int c = 0;
+        for (XWPFTableCell cell : row.getTableCells()) {
+            if (c == col) return cell;
+            c += gridSpan(cell);
+            if (c > col) break;
+        }
+        return null;
+    }
+
+    private static int alignmentOf(XWPFParagraph para) {
+        ParagraphAlignment a = para.getAlignment();
+        if (a == ParagraphAlignment.CENTER) return Element.ALIGN_CENTER;
+        if (a == ParagraphAlignment.RIGHT)  return Element.ALIGN_RIGHT;
+        if (a == ParagraphAlignment.BOTH)   return Element.ALIGN_JUSTIFIED;
+        return Element.ALIGN_LEFT;
+    }
+
+    private static float[] gridWidths(XWPFTable table, int columns) {
+        float[] widths = new float[Math.max(columns, 1)];
+        Arrays.fill(widths, 1f);
+        CTTblGrid grid = table.getCTTbl().getTblGrid();
+        if (grid != null && grid.sizeOfGridColArray() == columns) {
+            for (int c = 0; c < columns; c++) {
+                CTTblGridCol col = grid.getGridColArray(c);
+                Object w = col.isSetW() ? col.getW() : null;
+                if (w instanceof BigInteger && ((BigInteger) w).signum() > 0) widths[c] = ((BigInteger) w).floatValue();
+            }
+        }
+        return widths;
+    }
+}
@@ -0,0 +1,145 @@
+package com.reinsurance.notes;
+
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Default source: loads the whole workbook with {@link XSSFWorkbook}, updates rows in place and
+ * writes the workbook back over the input file.
+ */
+final class PoiNoteSource implements NoteSource {
+
+    private final String excelFilePath;
+    private final Workbook wb;
+    private final Sheet mainSheet;
+    private final Sheet creditSheet;
+    private final Map<String,Integer> creditHeader;
+
+    private PoiNoteSource(String excelFilePath, Workbook wb) {
+        this.excelFilePath = excelFilePath;
+        this.wb = wb;
+        this.mainSheet   = wb.getSheetAt(0);
+        this.creditSheet = wb.getSheet("CreditNoteDetails"); // optional
+        this.creditHeader = (creditSheet != null)
+                ? BrokerDebitCreditGenerator.readHeaderMap(creditSheet)
+                : Collections.emptyMap();
+    }
+
+    static PoiNoteSource open(String excelFilePath) throws IOException {
+        try (FileInputStream fis = new FileInputStream(excelFilePath)) {
+            return new PoiNoteSource(excelFilePath, new XSSFWorkbook(fis));
+        }
+    }
+
+    @Override
+    public Map<String,Integer> getCreditHeader() {
+        return creditHeader;
+    }
+
+    @Override
+    public Iterable<NoteRow> getCreditRows() {
+        if (creditSheet == null) return Collections.emptyList();
+        List<NoteRow> rows = new ArrayList<>();
+        for (int cr = 1; cr <= creditSheet.getLastRowNum(); cr++) {
+            Row crow = creditSheet.getRow(cr);
+            if (crow != null) rows.add(new PoiRow(crow));
+        }
+        return rows;
+    }
+
+    @Override
+    public void forEachMainRow(MainRowHandler handler) throws Exception {
+        for (int r = 1; r <= mainSheet.getLastRowNum(); r++) {
+            Row row = mainSheet.getRow(r);
+            handler.handle(r, row == null ? null : new PoiRow(row));
+        }
+    }
+
+    @Override
+    public void mainRowDone(NoteRow row) {
+        // values were written straight into the sheet
+    }
+
+    @Override
+    public void creditRowDone(NoteRow row) {
+        // values were written straight into the sheet
+    }
+
+    @Override
+    public void save() throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(excelFilePath)) {
+            wb.write(fos);
+        }
+    }
+
+    /**
+     * Writes the workbook to a temp file next to the input, fsyncs it and renames it over the input,
+     * so a crash mid-write can never leave a truncated workbook behind.
+     */
+    void saveAtomically() throws IOException {
+        Path target = Paths.get(excelFilePath).toAbsolutePath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+            wb.write(fos);
+            fos.getFD().sync();
+        }
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Main-sheet row {@code r}, created when the sheet has none. */
+    NoteRow mainRow(int r) {
+        Row row = mainSheet.getRow(r);
+        return new PoiRow(row != null ? row : mainSheet.createRow(r));
+    }
+
+    /** "CreditNoteDetails" row {@code r}, or {@code null} when the sheet is missing. */
+    NoteRow creditRow(int r) {
+        if (creditSheet == null) return null;
+        Row row = creditSheet.getRow(r);
+        return new PoiRow(row != null ? row : creditSheet.createRow(r));
+    }
+
+    @Override
+    public String describeSaveTarget() {
+        return "Excel Updated";
+    }
+
+    @Override
+    public void close() throws IOException {
+        wb.close();
+    }
+
+    /** {@link NoteRow} view over a POI row. */
+    static final class PoiRow implements NoteRow {
+        private final Row row;
+
+        PoiRow(Row row) {
+            this.row = row;
+        }
+
+        @Override public int getRowNum()                        { return row.getRowNum(); }
+        @Override public int getLastCellNum()                   { return row.getLastCellNum(); }
+        @Override public boolean isEmpty()                      { return BrokerDebitCreditGenerator.isRowEmpty(row); }
+        @Override public String getString(int idx)             { return BrokerDebitCreditGenerator.getString(row, idx); }
+        @Override public double getDouble(int idx)             { return BrokerDebitCreditGenerator.getDouble(row, idx); }
+        @Override public void setString(int idx, String val)   { BrokerDebitCreditGenerator.setString(row, idx, val); }
+        @Override public void setNumeric(int idx, double val)  { BrokerDebitCreditGenerator.setNumeric(row, idx, val); }
+    }
+}
@@ -0,0 +1,168 @@
+package com.reinsurance.notes;
+
+/**
+ * Premium, ceding commission, brokerage and net payable calculations for debit and credit rows.
+ *
+ * Works on columnar batches: every input and result is a {@code double[]} indexed by row, and
+ * {@link #calculateMain} / {@link #calculateCredit} fill the result columns for a row range in one
+ * loop, without boxing or per-row objects. Batches are plain arrays, so they can be reused across
+ * calls and disjoint ranges of the same batch can be calculated on different threads.
+ *
+ * The formulas and their evaluation order are exactly the ones the generator has always used, so a
+ * note produced through the engine carries the same amounts, bit for bit.
+ */
+final class PremiumEngine {
+
+    private PremiumEngine() {
+    }
+
+    /** Main-sheet rows: columns 6-10 and 15 in, columns 11-20 out. */
+    static final class MainBatch {
+        // inputs
+        final double[] sumInsured;
+        final double[] cedentRate;
+        final double[] reinsRate;      // 0 = same as cedent rate
+        final double[] share;
+        final double[] brokerage;
+        final double[] cedingPct;
+
+        // results
+        final double[] grossPremiumCedent;
+        final double[] sharePremiumCedent;
+        final double[] grossPremiumReins;
+        final double[] sharePremiumReins;
+        final double[] cedingCommission;
+        final double[] grossBrokerage;
+        final double[] netBrokerage;
+        final double[] netPremiumFromYou;
+        final double[] netPremiumToYou;
+
+        MainBatch(int capacity) {
+            sumInsured         = new double[capacity];
+            cedentRate         = new double[capacity];
+            reinsRate          = new double[capacity];
+            share              = new double[capacity];
+            brokerage          = new double[capacity];
+            cedingPct          = new double[capacity];
+            grossPremiumCedent = new double[capacity];
+            sharePremiumCedent = new double[capacity];
+            grossPremiumReins  = new double[capacity];
+            sharePremiumReins  = new double[capacity];
+            cedingCommission   = new double[capacity];
+            grossBrokerage     = new double[capacity];
+            netBrokerage       = new double[capacity];
+            netPremiumFromYou  = new double[capacity];
+            netPremiumToYou    = new double[capacity];
+        }
+
+        int capacity() {
+            return sumInsured.length;
+        }
+    }
+
+    /**
+     * CreditNoteDetails rows. Rate, brokerage and ceding % of the row fall back to those of the linked
+     * main row when they are 0, so the main-row values travel with each credit row.
+     */
+    static final class CreditBatch {
+        // inputs from the linked main row
+        final double[] sumInsured;
+        final double[] cedentRate;
+        final double[] mainReinsRate;
+        final double[] mainBrokerage;
+        final double[] mainCedingPct;
+
+        // inputs from the credit row (0 = use the main row's value)
+        final double[] reinsRate;
+        final double[] share;
+        final double[] brokerage;
+        final double[] cedingPct;
+
+        // results
+        final double[] effectiveReinsRate; // rate actually applied, printed on the credit note
+        final double[] grossPremium;
+        final double[] sharePremium;
+        final double[] cedingCommission;
+        final double[] grossBrokerage;
+        final double[] netBrokerage;
+        final double[] netPayable;
+
+        CreditBatch(int capacity) {
+            sumInsured         = new double[capacity];
+            cedentRate         = new double[capacity];
+            mainReinsRate      = new double[capacity];
+            mainBrokerage      = new double[capacity];
+            mainCedingPct      = new double[capacity];
+            reinsRate          = new double[capacity];
+            share              = new double[capacity];
+            brokerage          = new double[capacity];
+            cedingPct          = new double[capacity];
+            effectiveReinsRate = new double[capacity];
+            grossPremium       = new double[capacity];
+            sharePremium       = new double[capacity];
+            cedingCommission   = new double[capacity];
+            grossBrokerage     = new double[capacity];
+            netBrokerage       = new double[capacity];
+            netPayable         = new double[capacity];
+        }
+
+        int capacity() {
+            return sumInsured.length;
+        }
+    }
+
+    /** Fills the result columns of rows {@code from} (inclusive) to {@code to} (exclusive). */
+    static void calculateMain(MainBatch b, int from, int to) {
+        final double[] si = b.sumInsured, rate = b.cedentRate, reinsRate = b.reinsRate;
+        final double[] share = b.share, brokerage = b.brokerage, cedingPct = b.cedingPct;
+
+        for (int i = from; i < to; i++) {
+            double grossPremiumCedent = si[i] * (rate[i] / 100);
+            double sharePremiumCedent = grossPremiumCedent * (share[i] / 100);
+
+            double effectiveReinsRate = (reinsRate[i] > 0) ? reinsRate[i] : rate[i];
+            double grossPremiumReins  = si[i] * (effectiveReinsRate / 100);
+            double sharePremiumReins  = grossPremiumReins * (share[i] / 100);
+
+            double cedingCommission = sharePremiumCedent * (cedingPct[i] / 100);
+            double grossBrokerage   = sharePremiumReins * (brokerage[i] / 100);
+            double netBrokerage     = grossBrokerage / 2.0;
+
+            b.grossPremiumCedent[i] = grossPremiumCedent;
+            b.sharePremiumCedent[i] = sharePremiumCedent;
+            b.grossPremiumReins[i]  = grossPremiumReins;
+            b.sharePremiumReins[i]  = sharePremiumReins;
+            b.cedingCommission[i]   = cedingCommission;
+            b.grossBrokerage[i]     = grossBrokerage;
+            b.netBrokerage[i]       = netBrokerage;
+            b.netPremiumFromYou[i]  = sharePremiumCedent - cedingCommission;                  // debit (cedent)
+            b.netPremiumToYou[i]    = sharePremiumReins - netBrokerage - cedingCommission;    // credit (summary)
+        }
+    }
+
+    /** Fills the result columns of rows {@code from} (inclusive) to {@code to} (exclusive). */
+    static void calculateCredit(CreditBatch b, int from, int to) {
+        final double[] si = b.sumInsured, share = b.share;
+
+        for (int i = from; i < to; i++) {
+            double effectiveReinsRate = (b.reinsRate[i] > 0) ? b.reinsRate[i]
+                    : ((b.mainReinsRate[i] > 0) ? b.mainReinsRate[i] : b.cedentRate[i]);
+            double effectiveBrokerage = (b.brokerage[i] > 0) ? b.brokerage[i] : b.mainBrokerage[i];
+            double effectiveCedingPct = (b.cedingPct[i] > 0) ? b.cedingPct[i] : b.mainCedingPct[i];
+
+            double grossPremium     = si[i] * (effectiveReinsRate / 100);
+            double sharePremium     = grossPremium * (share[i] / 100);
+            double cedingCommission = sharePremium * (effectiveCedingPct / 100);
+            double grossBrokerage   = sharePremium * (effectiveBrokerage / 100);
+            double netBrokerage     = grossBrokerage / 2.0;
+
+            b.effectiveReinsRate[i] = effectiveReinsRate;
+            b.grossPremium[i]       = grossPremium;
+            b.sharePremium[i]       = sharePremium;
+            b.cedingCommission[i]   = cedingCommission;
+            b.grossBrokerage[i]     = grossBrokerage;
+            b.netBrokerage[i]       = netBrokerage;
+            b.netPayable[i]         = sharePremium - netBrokerage - cedingCommission;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.reinsurance.notes;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sidecar index of already-issued notes ({@code <workbook>.idx}).
+ *
+ * Each entry maps a debit or credit note number to a 64-bit hash of the inputs the note was issued
+ * from: main-sheet columns 0-10 plus the ceding commission % in column 15, and for credit rows the
+ * input columns by header plus the hash of the linked debit row. The "Processed" flag is checked
+ * first: a row without it is always issued. For a flagged row a single hash comparison decides whether
+ * it is unchanged (skip), unknown (keep the flag semantics) or changed after issue (re-issue the note
+ * even though it is flagged processed).
+ *
+ * Hashing is only done where the answer is needed: a pending row is hashed once it is issued, to be
+ * recorded, and a flagged row only when the workbook may have been edited. The index remembers the
+ * size and modification time of the workbook as the run saved it; when both still match, no flagged
+ * row can have changed and the flags are trusted without hashing ({@link #isWorkbookUnchanged()}).
+ * After an edit every flagged row is hashed once more, which is the cost of detecting changed inputs:
+ * the rows are read anyway, as the whole workbook is loaded.
+ *
+ * A note number found on more than one row in a run cannot identify its row, so it is reported as
+ * {@link Status#DUPLICATE}, falls back to the flag, and is left out of the saved index.
+ *
+ * File format: a {@code #workbook <tab> length <tab> lastModified} line, then one
+ * {@code M|C <tab> noteNo <tab> hash} line per note, written atomically at the end of the run.
+ */
+final class ProcessedIndex {
+
+    enum Status { UNKNOWN, UNCHANGED, CHANGED, DUPLICATE }
+
+    private static final int MAIN_DATE_COL = 1;
+    private static final int[] MAIN_INPUT_COLS = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 15};
+    private static final String[] CREDIT_INPUT_HEADERS = {
+            "Debit Note No.", "Credit Note No.", "Reinsured", "Reinsurer Name", "Reinsurer Address",
+            "Reinsurer Share (%)", "Reinsurance Rate (%)", "Brokerage (%)", "Ceding Commission (%)"
+    };
+
+    private static final String WORKBOOK_PREFIX = "#workbook\t";
+
+    private final File file;
+    private final File workbook;
+    private boolean workbookUnchanged; // the workbook is as the run that saved this index left it
+    private final Map<String,Long> mainNotes   = new HashMap<>();
+    private final Map<String,Long> creditNotes = new HashMap<>();
+    private final Set<String> seenMain   = new HashSet<>(); // checked in this run
+    private final Set<String> seenCredit = new HashSet<>();
+    private final Set<String> duplicates = new HashSet<>(); // "M"/"C" + key, never indexed
+    private int reissued;
+
+    private ProcessedIndex(File file, File workbook) {
+        this.file = file;
+        this.workbook = workbook;
+    }
+
+    static ProcessedIndex load(String excelFilePath) throws IOException {
+        ProcessedIndex index = new ProcessedIndex(new File(excelFilePath + ".idx"), new File(excelFilePath));
+        if (!index.file.exists()) return index;
+
+        try (BufferedReader in = Files.newBufferedReader(index.file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(WORKBOOK_PREFIX)) {
+                    index.workbookUnchanged = line.equals(WORKBOOK_PREFIX + index.fingerprint());
+                    continue;
+                }
+                String[] parts = line.split("\t");
+                if (parts.length != 3) continue;
+                long hash = Long.parseUnsignedLong(parts[2], 16);
+                (parts[0].equals("M") ? index.mainNotes : index.creditNotes).put(parts[1], hash);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt index file " + index.file + ": " + e.getMessage(), e);
+        }
+        return index;
+    }
+
+    String getPath() {
+        return file.getPath();
+    }
+
+    int size() {
+        return mainNotes.size() + creditNotes.size();
+    }
+
+    int getReissuedCount() {
+        return reissued;
+    }
+
+    /** True when the workbook has not been touched since this index was saved: flagged rows are still as issued. */
+    boolean isWorkbookUnchanged() {
+        return workbookUnchanged;
+    }
+
+    // ---------- Hashing ----------
+
+    /** @param docDate the document date the note is issued with (column 1, or the auto-date filled in) */
+    long hashMain(NoteRow row, String docDate) {
+        long h = FNV_OFFSET;
+        for (int c : MAIN_INPUT_COLS) h = mix(h, c == MAIN_DATE_COL ? docDate : row.getString(c));
+        return h;
+    }
+
+    long hashCredit(NoteRow crow, Map<String,Integer> hdr, long debitHash) {
+        long h = mix(FNV_OFFSET, Long.toHexString(debitHash));
+        for (String name : CREDIT_INPUT_HEADERS) {
+            h = mix(h, BrokerDebitCreditGenerator.getStringByHeader(crow, hdr, name));
+        }
+        return h;
+    }
+
+    // ---------- Lookups ----------
+
+    /** Status of a main row; call once per row, a second row with the same note number is a duplicate. */
+    Status checkMain(String debitNoteNo, long hash) {
+        return check("M", mainNotes, seenMain, debitNoteNo, hash);
+    }
+
+    Status checkCredit(String creditNoteNo, long hash) {
+        return check("C", creditNotes, seenCredit, creditNoteNo, hash);
+    }
+
+    private Status check(String kind, Map<String,Long> notes, Set<String> seen, String noteNo, long hash) {
+        String key = key(noteNo);
+        if (!seen.add(key)) {
+            duplicates.add(kind + key);
+            return Status.DUPLICATE;
+        }
+        Long known = notes.get(key);
+        if (known == null) return Status.UNKNOWN;
+        if (known == hash) return Status.UNCHANGED;
+        reissued++;
+        return Status.CHANGED;
+    }
+
+    /**
+     * Whether any credit row of an unchanged debit still needs a note: rows not flagged processed, or
+     * rows whose inputs changed. Flagged rows the index does not know yet are added to it.
+     */
+    boolean hasPendingCredits(List<NoteRow> credits, Map<String,Integer> hdr, String debitNoteNo, long debitHash) {
+        if (credits == null) return false;
+        boolean pending = false;
+        for (NoteRow crow : credits) {
+            if (!BrokerDebitCreditGenerator.isProcessedFlag(BrokerDebitCreditGenerator.getStringByHeader(crow, hdr, "Processed"))) {
+                pending = true;
+                continue;
+            }
+            String creditNoteNo = BrokerDebitCreditGenerator.creditNoteNo(crow, hdr, debitNoteNo);
+            long hash = hashCredit(crow, hdr, debitHash);
+            Long known = creditNotes.get(key(creditNoteNo));
+            if (known == null) recordCredit(creditNoteNo, hash);
+            else if (known != hash) pending = true;
+        }
+        return pending;
+    }
+
+    /** Whether any credit row is not flagged processed; reads only the flags. */
+    static boolean hasUnflaggedCredits(List<NoteRow> credits, Map<String,Integer> hdr) {
+        if (credits == null) return false;
+        for (NoteRow crow : credits) {
+            if (!BrokerDebitCreditGenerator.isProcessedFlag(BrokerDebitCreditGenerator.getStringByHeader(crow, hdr, "Processed"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void recordMain(String debitNoteNo, long hash) {
+        String key = key(debitNoteNo);
+        if (!duplicates.contains("M" + key)) mainNotes.put(key, hash);
+    }
+
+    void recordCredit(String creditNoteNo, long hash) {
+        String key = key(creditNoteNo);
+        if (!duplicates.contains("C" + key)) creditNotes.put(key, hash);
+    }
+
+    // ---------- Persistence ----------
+
+    /** Writes the index; call after the workbook is saved, so its size and time are recorded as final. */
+    void save() throws IOException {
+        for (String duplicate : duplicates) {
+            (duplicate.charAt(0) == 'M' ? mainNotes : creditNotes).remove(duplicate.substring(1));
+        }
+        Path target = file.toPath().toAbsolutePath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            out.write(WORKBOOK_PREFIX + fingerprint());
+            out.newLine();
+            write(out, "M", mainNotes);
+            write(out, "C", creditNotes);
+        }
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void write(BufferedWriter out, String kind, Map<String,Long> notes) throws IOException {
+        for (Map.Entry<String,Long> e : notes.entrySet()) {
+            out.write(kind);
+            out.write('\t');
+            out.write(e.getKey());
+            out.write('\t');
+            out.write(Long.toHexString(e.getValue()));
+            out.newLine();
+        }
+    }
+
+    private String fingerprint() {
+        return workbook.length() + "\t" + workbook.lastModified();
+    }
+
+    // note numbers are stored on one tab-separated line
+    private static String key(String noteNo) {
+        return noteNo.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+    }
+
+    // ---------- FNV-1a ----------
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME  = 0x100000001b3L;
+
+    private static long mix(long h, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            h = (h ^ (c & 0xff)) * FNV_PRIME;
+            h = (h ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return (h ^ 0x1f) * FNV_PRIME; // field separator
+    }
+}
@@ -0,0 +1,296 @@
+package com.reinsurance.notes;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Export of the calculated amounts ({@code --export[=PATH]}) for reconciliation without re-reading the
+ * workbook: one line per calculated debit row and credit row, keyed by note number, appended while the
+ * rows are processed.
+ *
+ * Every line has the same {@link #COLUMNS}, named after main-sheet columns 11-20. A credit line fills
+ * the ones the credit sheet has ("Fac Premium 100%" is {@code grossPremiumReins}, "Share Premium"
+ * {@code sharePremiumReins}, "Net Premium Payable To You" {@code netPremiumToYou}); the others are NaN.
+ *
+ * A {@code .csv} path gets CSV with a header row. Any other path gets the columnar format read by
+ * {@link ResultsFile}: blocks of up to {@link #BLOCK_ROWS} lines, each column stored as contiguous
+ * little-endian doubles, so a mapped block can be scanned or summed column by column. The file is
+ * written as {@code <path>.part} and renamed by {@link #finish()}; an unfinished export is deleted.
+ */
+abstract class ResultsExport implements Closeable {
+
+    static final byte DEBIT = 0;
+    static final byte CREDIT = 1;
+
+    static final String[] COLUMNS = {
+            "grossPremiumCedent", "sharePremiumCedent", "grossPremiumReins", "sharePremiumReins",
+            "cedingCommissionPct", "cedingCommission", "grossBrokerage", "netBrokerage",
+            "netPremiumFromYou", "netPremiumToYou"
+    };
+
+    static final int BLOCK_ROWS = 4096;
+
+    final File file;
+    final File part;
+    private final double[] line = new double[COLUMNS.length];
+    private boolean finished;
+
+    private ResultsExport(File file) {
+        this.file = file.getAbsoluteFile();
+        this.part = new File(this.file.getPath() + ".part");
+        File parent = this.file.getParentFile();
+        if (parent != null) parent.mkdirs();
+    }
+
+    /** CSV for a {@code .csv} path, the columnar format otherwise. */
+    static ResultsExport open(File file, String workbook, String currency) throws IOException {
+        return file.getName().toLowerCase().endsWith(".csv")
+                ? new Csv(file)
+                : new Columnar(file, workbook, currency);
+    }
+
+    static String defaultPath(String excelFilePath) {
+        return excelFilePath + ".results.bin";
+    }
+
+    /** A calculated main-sheet row: the values written to columns 11-20. */
+    void debit(String debitNoteNo,
+               double grossPremiumCedent, double sharePremiumCedent, double grossPremiumReins,
+               double sharePremiumReins, double cedingCommissionPct, double cedingCommission,
+               double grossBrokerage, double netBrokerage, double netPremiumFromYou, double netPremiumToYou)
+            throws IOException {
+        double[] v = line;
+        v[0] = grossPremiumCedent;
+        v[1] = sharePremiumCedent;
+        v[2] = grossPremiumReins;
+        v[3] = sharePremiumReins;
+        v[4] = cedingCommissionPct;
+        v[5] = cedingCommission;
+        v[6] = grossBrokerage;
+        v[7] = netBrokerage;
+        v[8] = netPremiumFromYou;
+        v[9] = netPremiumToYou;
+        append(DEBIT, debitNoteNo, debitNoteNo, v);
+    }
+
+    /** A calculated CreditNoteDetails row: the values written to its result columns. */
+    void credit(String creditNoteNo, String debitNoteNo,
+                double facPremium100, double sharePremium, double cedingCommission,
+                double grossBrokerage, double netPayable) throws IOException {
+        double[] v = line;
+        Arrays.fill(v, Double.NaN);
+        v[2] = facPremium100;
+        v[3] = sharePremium;
+        v[5] = cedingCommission;
+        v[6] = grossBrokerage;
+        v[9] = netPayable;
+        append(CREDIT, creditNoteNo, debitNoteNo, v);
+    }
+
+    abstract void append(byte kind, String noteNo, String debitNoteNo, double[] values) throws IOException;
+
+    abstract void flushAndClose() throws IOException;
+
+    /** Completes the file and moves it into place. */
+    void finish() throws IOException {
+        if (finished) return;
+        flushAndClose();
+        finished = true;
+        try {
+            Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Discards an export that was never {@link #finish()}ed. */
+    @Override
+    public void close() throws IOException {
+        if (finished) return;
+        finished = true;
+        try {
+            flushAndClose();
+        } finally {
+            Files.deleteIfExists(part.toPath());
+        }
+    }
+
+    /** A CSV field, quoted when it holds a comma, quote or line break. */
+    static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // ---------- CSV ----------
+
+    private static final class Csv extends ResultsExport {
+        private final Writer out;
+
+        Csv(File file) throws IOException {
+            super(file);
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(part), StandardCharsets.UTF_8), 64 * 1024);
+            out.write("kind,noteNo,debitNoteNo");
+            for (String column : COLUMNS) out.write(',' + column);
+            out.write('\n');
+        }
+
+        @Override
+        void append(byte kind, String noteNo, String debitNoteNo, double[] values) throws IOException {
+            out.write(kind == DEBIT ? "D," : "C,");
+            out.write(csv(noteNo));
+            out.write(',');
+            out.write(csv(debitNoteNo));
+            for (double v : values) {
+                out.write(',');
+                if (!Double.isNaN(v)) out.write(Double.toString(v)); // exact: parses back to the same double
+            }
+            out.write('\n');
+        }
+
+        @Override
+        void flushAndClose() throws IOException {
+            out.close();
+        }
+
+    }
+
+    // ---------- Columnar ----------
+
+    /*
+     * Layout (little-endian, every section padded to 8 bytes so mapped doubles are aligned):
+     *
+     *   header   MAGIC, int version, int columns, int blockRows, int metaBytes, meta (UTF-8 "key=value" lines)
+     *   block*   int rows, int keyBytes,
+     *            double[columns][rows]   column-major values
+     *            byte[rows]              kind (DEBIT / CREDIT)
+     *            int[2 * rows + 1]       offsets into the key heap: noteNo i at 2i, debitNoteNo i at 2i + 1
+     *            byte[keyBytes]          key heap (UTF-8)
+     *   footer   long[blocks] block offsets, long totalRows, int blocks, int 0
+     *   trailer  long footerOffset, MAGIC
+     */
+    static final byte[] MAGIC = "NOTERES1".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+
+    private static final class Columnar extends ResultsExport {
+        private final FileChannel channel;
+        private final double[][] values = new double[COLUMNS.length][BLOCK_ROWS];
+        private final byte[] kinds = new byte[BLOCK_ROWS];
+        private final String[] keys = new String[2 * BLOCK_ROWS];
+        private final List<Long> blockOffsets = new ArrayList<>();
+        private int rows;
+        private long totalRows;
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+        Columnar(File file, String workbook, String currency) throws IOException {
+            super(file);
+            channel = new FileOutputStream(part).getChannel();
+
+            StringBuilder meta = new StringBuilder();
+            meta.append("columns=").append(String.join(",", COLUMNS)).append('\n');
+            meta.append("currency=").append(currency).append('\n');
+            meta.append("workbook=").append(workbook.replace('\n', ' ')).append('\n');
+            byte[] metaBytes = meta.toString().getBytes(StandardCharsets.UTF_8);
+
+            ByteBuffer b = buffer(24 + metaBytes.length + 8);
+            b.put(MAGIC).putInt(VERSION).putInt(COLUMNS.length).putInt(BLOCK_ROWS).putInt(metaBytes.length);
+            b.put(metaBytes);
+            pad(b);
+            write(b);
+        }
+
+        @Override
+        void append(byte kind, String noteNo, String debitNoteNo, double[] v) throws IOException {
+            for (int c = 0; c < v.length; c++) values[c][rows] = v[c];
+            kinds[rows] = kind;
+            keys[2 * rows] = noteNo;
+            keys[2 * rows + 1] = debitNoteNo;
+            if (++rows == BLOCK_ROWS) writeBlock();
+        }
+
+        private void writeBlock() throws IOException {
+            if (rows == 0) return;
+            byte[][] keyBytes = new byte[2 * rows][];
+            int heap = 0;
+            for (int i = 0; i < keyBytes.length; i++) {
+                keyBytes[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+                heap += keyBytes[i].length;
+            }
+
+            long size = 8 + 8L * COLUMNS.length * rows + padded(rows) + padded(4 * (2 * rows + 1)) + padded(heap);
+            ByteBuffer b = buffer((int) size);
+            b.putInt(rows).putInt(heap);
+            for (double[] column : values) {
+                for (int i = 0; i < rows; i++) b.putDouble(column[i]);
+            }
+            b.put(kinds, 0, rows);
+            pad(b);
+            int offset = 0;
+            for (byte[] key : keyBytes) {
+                b.putInt(offset);
+                offset += key.length;
+            }
+            b.putInt(offset);
+            pad(b);
+            for (byte[] key : keyBytes) b.put(key);
+            pad(b);
+
+            blockOffsets.add(channel.position());
+            write(b);
+            totalRows += rows;
+            Arrays.fill(keys, 0, 2 * rows, null);
+            rows = 0;
+        }
+
+        @Override
+        void flushAndClose() throws IOException {
+            try {
+                writeBlock();
+                long footer = channel.position();
+                ByteBuffer b = buffer(8 * blockOffsets.size() + 16 + 16);
+                for (long offset : blockOffsets) b.putLong(offset);
+                b.putLong(totalRows).putInt(blockOffsets.size()).putInt(0);
+                b.putLong(footer).put(MAGIC);
+                write(b);
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private ByteBuffer buffer(int size) {
+            if (buffer.capacity() < size) buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.clear();
+            return buffer;
+        }
+
+        private void write(ByteBuffer b) throws IOException {
+            b.flip();
+            while (b.hasRemaining()) channel.write(b);
+        }
+
+        private static void pad(ByteBuffer b) {
+            while ((b.position() & 7) != 0) b.put((byte) 0);
+        }
+
+        private static long padded(int bytes) {
+            return (bytes + 7L) & ~7L;
+        }
+    }
+}
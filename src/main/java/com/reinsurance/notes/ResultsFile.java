@@ -0,0 +1,263 @@
+package com.reinsurance.notes;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reader for the columnar results written by {@link ResultsExport}.
+ *
+ * Only the header and footer are read on open; a {@link Block} is memory-mapped when asked for, so a
+ * scan touches just the columns it reads and files of any size work (each block is mapped on its own).
+ *
+ * <pre>
+ *   try (ResultsFile results = ResultsFile.open(file)) {
+ *       double net = results.sum("netPremiumFromYou");
+ *   }
+ * </pre>
+ *
+ * From the command line, {@code --dump-results=PATH} prints a file's summary through {@link #dump}.
+ */
+final class ResultsFile implements Closeable {
+
+    private final File file;
+    private final FileChannel channel;
+    private final Map<String, String> meta = new LinkedHashMap<>();
+    private final String[] columns;
+    private final long[] blockOffsets;
+    private final long totalRows;
+
+    private ResultsFile(File file, FileChannel channel) throws IOException {
+        this.file = file;
+        this.channel = channel;
+
+        long size = channel.size();
+        if (size < 24 + 16) throw corrupt("too short");
+        ByteBuffer trailer = read(size - 16, 16);
+        long footer = trailer.getLong();
+        checkMagic(trailer);
+
+        ByteBuffer header = read(0, 24);
+        checkMagic(header);
+        int version = header.getInt();
+        if (version != ResultsExport.VERSION) throw corrupt("unsupported version " + version);
+        int columnCount = header.getInt();
+        header.getInt(); // block rows
+        int metaBytes = header.getInt();
+        String metaText = StandardCharsets.UTF_8.decode(read(24, metaBytes)).toString();
+        for (String line : metaText.split("\n")) {
+            int eq = line.indexOf('=');
+            if (eq > 0) meta.put(line.substring(0, eq), line.substring(eq + 1));
+        }
+        columns = meta.getOrDefault("columns", "").split(",");
+        if (columns.length != columnCount) throw corrupt("column names do not match the column count");
+
+        ByteBuffer counts = read(size - 32, 16);
+        totalRows = counts.getLong();
+        int blocks = counts.getInt();
+        if (footer + 8L * blocks + 32 != size) throw corrupt("bad footer");
+        ByteBuffer offsets = read(footer, 8 * blocks);
+        blockOffsets = new long[blocks];
+        for (int i = 0; i < blocks; i++) blockOffsets[i] = offsets.getLong();
+    }
+
+    static ResultsFile open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new ResultsFile(file, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long rowCount() {
+        return totalRows;
+    }
+
+    int blockCount() {
+        return blockOffsets.length;
+    }
+
+    String[] columns() {
+        return columns.clone();
+    }
+
+    int columnIndex(String column) {
+        int i = Arrays.asList(columns).indexOf(column);
+        if (i < 0) throw new IllegalArgumentException("No column " + column + " in " + file);
+        return i;
+    }
+
+    /** Header values written by the export: {@code columns}, {@code currency}, {@code workbook}. */
+    String meta(String key) {
+        return meta.get(key);
+    }
+
+    /** Maps block {@code i}. */
+    Block block(int i) throws IOException {
+        long start = blockOffsets[i];
+        long end = (i + 1 < blockOffsets.length) ? blockOffsets[i + 1] : footerOffset();
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        return new Block(map.order(ByteOrder.LITTLE_ENDIAN), columns.length);
+    }
+
+    /** Sum of {@code column} over all lines, NaN (not applicable) values skipped. */
+    double sum(String column) throws IOException {
+        int c = columnIndex(column);
+        double sum = 0;
+        for (int b = 0; b < blockOffsets.length; b++) {
+            DoubleBuffer values = block(b).column(c);
+            while (values.hasRemaining()) {
+                double v = values.get();
+                if (!Double.isNaN(v)) sum += v;
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Prints the header values, line counts and column sums of {@code file}; with {@code lines}, also
+     * every line in the CSV layout of {@link ResultsExport} (kind, noteNo, debitNoteNo, values).
+     */
+    static void dump(File file, boolean lines, PrintStream out) throws IOException {
+        try (ResultsFile results = open(file)) {
+            long debits = 0;
+            for (int b = 0; b < results.blockCount(); b++) {
+                Block block = results.block(b);
+                for (int i = 0; i < block.rows(); i++) if (block.isDebit(i)) debits++;
+            }
+            out.println("Results File: " + file);
+            out.println("Workbook: " + results.meta("workbook"));
+            out.println("Currency: " + results.meta("currency"));
+            out.println("Lines: " + results.rowCount() + " (" + debits + " debit, " + (results.rowCount() - debits)
+                    + " credit) in " + results.blockCount() + " blocks");
+            for (String column : results.columns) {
+                out.println("  " + column + " = " + results.sum(column));
+            }
+            if (!lines) return;
+
+            out.println();
+            out.println("kind,noteNo,debitNoteNo," + String.join(",", results.columns));
+            StringBuilder line = new StringBuilder(256);
+            for (int b = 0; b < results.blockCount(); b++) {
+                Block block = results.block(b);
+                for (int i = 0; i < block.rows(); i++) {
+                    line.setLength(0);
+                    line.append(block.isDebit(i) ? 'D' : 'C')
+                            .append(',').append(ResultsExport.csv(block.noteNo(i)))
+                            .append(',').append(ResultsExport.csv(block.debitNoteNo(i)));
+                    for (int c = 0; c < results.columns.length; c++) {
+                        double v = block.value(c, i);
+                        line.append(',');
+                        if (!Double.isNaN(v)) line.append(v);
+                    }
+                    out.println(line);
+                }
+            }
+        }
+    }
+
+    /** One mapped block: values by column, kind and note numbers by line. */
+    static final class Block {
+        private final ByteBuffer map;
+        private final int rows;
+        private final int columns;
+        private final int kindsAt;
+        private final int offsetsAt;
+        private final int heapAt;
+
+        Block(ByteBuffer map, int columns) {
+            this.map = map;
+            this.rows = map.getInt(0);
+            this.columns = columns;
+            this.kindsAt = 8 + 8 * columns * rows;
+            this.offsetsAt = kindsAt + align(rows);
+            this.heapAt = offsetsAt + align(4 * (2 * rows + 1));
+        }
+
+        int rows() {
+            return rows;
+        }
+
+        /** Column {@code c} of this block as {@link #rows()} doubles, read straight from the mapping. */
+        DoubleBuffer column(int c) {
+            if (c < 0 || c >= columns) throw new IndexOutOfBoundsException("column " + c);
+            ByteBuffer slice = map.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            slice.position(8 + 8 * c * rows).limit(8 + 8 * (c + 1) * rows);
+            return slice.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        }
+
+        double value(int c, int row) {
+            return map.getDouble(8 + 8 * (c * rows + row));
+        }
+
+        boolean isDebit(int row) {
+            return map.get(kindsAt + row) == ResultsExport.DEBIT;
+        }
+
+        String noteNo(int row) {
+            return key(2 * row);
+        }
+
+        /** The debit note itself for a debit line, the linked debit note for a credit line. */
+        String debitNoteNo(int row) {
+            return key(2 * row + 1);
+        }
+
+        private String key(int k) {
+            int from = map.getInt(offsetsAt + 4 * k);
+            int to = map.getInt(offsetsAt + 4 * (k + 1));
+            byte[] bytes = new byte[to - from];
+            ByteBuffer heap = map.duplicate();
+            heap.position(heapAt + from);
+            heap.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static int align(int bytes) {
+            return (bytes + 7) & ~7;
+        }
+    }
+
+    // ---------- Helpers ----------
+
+    private long footerOffset() throws IOException {
+        return channel.size() - 32 - 8L * blockOffsets.length;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (b.hasRemaining()) {
+            if (channel.read(b, position + b.position()) < 0) throw corrupt("truncated");
+        }
+        b.flip();
+        return b;
+    }
+
+    private void checkMagic(ByteBuffer b) throws IOException {
+        byte[] magic = new byte[ResultsExport.MAGIC.length];
+        b.get(magic);
+        if (!Arrays.equals(magic, ResultsExport.MAGIC)) throw corrupt("not a results file");
+    }
+
+    private IOException corrupt(String reason) {
+        return new IOException("Corrupt results file " + file + ": " + reason);
+    }
+}
@@ -0,0 +1,273 @@
+package com.reinsurance.notes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and per-stage latency histograms for one run.
+ *
+ * Everything is lock-free (LongAdder / atomic buckets) because notes are rendered and written on
+ * worker threads while the main thread keeps reading rows. At the end of the run the numbers are
+ * written as JSON; while it runs, {@link #startProgress} can print a one-line status every few seconds.
+ */
+final class RunMetrics {
+
+    enum Counter {
+        ROWS_READ("rowsRead"),
+        CREDIT_ROWS_READ("creditRowsRead"),
+        SKIPPED_BLANK("skippedBlank"),
+        SKIPPED_PROCESSED("skippedProcessed"),
+        SKIPPED_INCOMPLETE("skippedIncomplete"),
+        DEBIT_NOTES("debitNotes"),
+        CREDIT_NOTES("creditNotes"),
+        CREDIT_STATEMENTS("creditStatements"),
+        FAILURES("failures");
+
+        final String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+    }
+
+    /** Net amounts of the notes written, in the run's currency. */
+    enum Amount {
+        DEBIT_NET_PREMIUM("debitNetPremium"),
+        CREDIT_NET_PAYABLE("creditNetPayable");
+
+        final String key;
+
+        Amount(String key) {
+            this.key = key;
+        }
+    }
+
+    enum Stage {
+        EXCEL_READ("excelRead"),
+        CALCULATION("calculation"),
+        TEMPLATE_RENDER("templateRender"),
+        FILE_WRITE("fileWrite"),
+        WORKBOOK_SAVE("workbookSave");
+
+        final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+
+    private final long startNanos = System.nanoTime();
+    private final Instant startedAt = Instant.now();
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private final DoubleAdder[] amounts = new DoubleAdder[Amount.values().length];
+    private final Histogram[] stages = new Histogram[Stage.values().length];
+    private volatile long workbookLoadNanos;
+    private ScheduledExecutorService progress;
+
+    RunMetrics() {
+        for (int i = 0; i < counters.length; i++) counters[i] = new LongAdder();
+        for (int i = 0; i < amounts.length; i++) amounts[i] = new DoubleAdder();
+        for (int i = 0; i < stages.length; i++) stages[i] = new Histogram();
+    }
+
+    void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    void add(Amount amount, double value) {
+        amounts[amount.ordinal()].add(value);
+    }
+
+    double get(Amount amount) {
+        return amounts[amount.ordinal()].sum();
+    }
+
+    /** Start timestamp for {@link #record}. */
+    static long start() {
+        return System.nanoTime();
+    }
+
+    /** Records the time elapsed since {@code startNanos} (from {@link #start}) under {@code stage}. */
+    void record(Stage stage, long startNanos) {
+        stages[stage.ordinal()].add(System.nanoTime() - startNanos);
+    }
+
+    /** Opening the workbook and indexing CreditNoteDetails, done once before the first row. */
+    void recordWorkbookLoad(long startNanos) {
+        workbookLoadNanos = System.nanoTime() - startNanos;
+    }
+
+    // ---------- Progress ----------
+
+    /** Prints {@link #progressLine()} every {@code seconds} seconds until {@link #stopProgress()}. */
+    void startProgress(int seconds) {
+        progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "progress");
+            t.setDaemon(true);
+            return t;
+        });
+        progress.scheduleAtFixedRate(() -> System.out.println(progressLine()), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    void stopProgress() {
+        if (progress != null) {
+            progress.shutdownNow();
+            progress = null;
+        }
+    }
+
+    String progressLine() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long rows = get(Counter.ROWS_READ);
+        return String.format("⏳ %,d rows read | %,d debit + %,d credit notes | %,d skipped | %,d failed | %.0f rows/s",
+                rows, get(Counter.DEBIT_NOTES), get(Counter.CREDIT_NOTES),
+                get(Counter.SKIPPED_BLANK) + get(Counter.SKIPPED_PROCESSED) + get(Counter.SKIPPED_INCOMPLETE),
+                get(Counter.FAILURES), seconds > 0 ? rows / seconds : 0.0);
+    }
+
+    // ---------- Summary ----------
+
+    /** Writes the run summary as JSON (counters, net amounts, stage latencies in microseconds). */
+    void writeSummary(File file, String workbook, String currency) throws IOException {
+        StringBuilder json = new StringBuilder(2048);
+        json.append("{\n");
+        json.append("  \"workbook\": \"").append(escapeJson(workbook)).append("\",\n");
+        json.append("  \"currency\": \"").append(escapeJson(currency)).append("\",\n");
+        json.append("  \"startedAt\": \"").append(startedAt).append("\",\n");
+        json.append("  \"elapsedMillis\": ").append((System.nanoTime() - startNanos) / 1_000_000).append(",\n");
+        json.append("  \"workbookLoadMillis\": ").append(workbookLoadNanos / 1_000_000).append(",\n");
+
+        json.append("  \"counters\": {\n");
+        Counter[] cs = Counter.values();
+        for (int i = 0; i < cs.length; i++) {
+            json.append("    \"").append(cs[i].key).append("\": ").append(get(cs[i]));
+            json.append(i < cs.length - 1 ? ",\n" : "\n");
+        }
+        json.append("  },\n");
+
+        json.append("  \"amounts\": {\n");
+        Amount[] as = Amount.values();
+        for (int i = 0; i < as.length; i++) {
+            json.append("    \"").append(as[i].key).append("\": ").append(jsonAmount(get(as[i])));
+            json.append(i < as.length - 1 ? ",\n" : "\n");
+        }
+        json.append("  },\n");
+
+        json.append("  \"stagesMicros\": {\n");
+        Stage[] ss = Stage.values();
+        for (int i = 0; i < ss.length; i++) {
+            json.append("    \"").append(ss[i].key).append("\": ");
+            stages[ss[i].ordinal()].appendJson(json);
+            json.append(i < ss.length - 1 ? ",\n" : "\n");
+        }
+        json.append("  }\n");
+        json.append("}\n");
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write(json.toString());
+        }
+    }
+
+    /** Amount rounded to cents as a plain JSON number. */
+    static String jsonAmount(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    static String escapeJson(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 8);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    // ---------- Histogram ----------
+
+    /**
+     * Log-linear latency histogram over nanoseconds: 8 sub-buckets per power of two, so any reported
+     * percentile is within 12.5% of the true value. Fixed size, no allocation on {@link #add}.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB      = 1 << SUB_BITS;
+        private static final int BUCKETS  = (64 - SUB_BITS) * SUB;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max  = new AtomicLong();
+
+        void add(long nanos) {
+            if (nanos < 0) nanos = 0;
+            buckets.incrementAndGet(bucketOf(nanos));
+            count.increment();
+            total.add(nanos);
+            if (nanos > max.get()) max.accumulateAndGet(nanos, Math::max);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        /** Upper bound of the bucket holding the {@code p}-th percentile (0 &lt; p &le; 100). */
+        long percentile(double p) {
+            long n = count.sum();
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(n * p / 100.0);
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += buckets.get(b);
+                if (seen >= rank) return Math.min(upperBound(b), max.get());
+            }
+            return max.get();
+        }
+
+        private void appendJson(StringBuilder json) {
+            long n = count.sum();
+            json.append("{\"count\": ").append(n)
+                .append(", \"total\": ").append(total.sum() / 1000)
+                .append(", \"mean\": ").append(n == 0 ? 0 : total.sum() / n / 1000)
+                .append(", \"p50\": ").append(percentile(50) / 1000)
+                .append(", \"p90\": ").append(percentile(90) / 1000)
+                .append(", \"p99\": ").append(percentile(99) / 1000)
+                .append(", \"max\": ").append(max.get() / 1000)
+                .append('}');
+        }
+
+        static int bucketOf(long v) {
+            if (v < SUB) return (int) v;
+            int msb = 63 - Long.numberOfLeadingZeros(v);
+            int sub = (int) (v >>> (msb - SUB_BITS)) & (SUB - 1);
+            return (msb - SUB_BITS + 1) * SUB + sub;
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < SUB) return bucket;
+            int shift = bucket / SUB - 1;
+            long lower = (long) (SUB + bucket % SUB) << shift;
+            return lower + (1L << shift) - 1;
+        }
+    }
+}
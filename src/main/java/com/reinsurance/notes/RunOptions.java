@@ -0,0 +1,271 @@
+package com.reinsurance.notes;
+
+import java.util.Locale;
+
+/**
+ * Command-line options of {@link BrokerDebitCreditGenerator}.
+ *
+ * All options are optional; with no arguments the tool behaves exactly as before.
+ */
+final class RunOptions {
+
+    /** 1 = render notes on the main thread; &gt;1 = fixed worker pool; {@link WorkerPools#VIRTUAL} = virtual threads. */
+    int threads = 1;
+
+    /** Read the workbook with the SAX event API and write results to a separate workbook. */
+    boolean streaming;
+
+    /** Results workbook for streaming mode; defaults to {@code <input>-results.xlsx}. */
+    String resultsPath;
+
+    /** Journal finished rows to {@code <workbook>.journal} and save the workbook atomically at the end. */
+    boolean journal;
+
+    /** Keep a {@code <workbook>.idx} hash index of issued notes to skip unchanged rows and re-issue changed ones. */
+    boolean useIndex;
+
+    /** Open the output folder in Explorer when the run finishes; off for scripted and benchmark runs. */
+    boolean openOutputFolder = true;
+
+    /** Note files to write per note: .docx (default), .pdf or both. */
+    NoteOutput.Format format = NoteOutput.Format.DOCX;
+
+    /** Write all notes into one ZIP archive instead of one file per note. */
+    boolean archive;
+
+    /** Archive path; defaults to {@code output/notes-<timestamp>.zip}. */
+    String archivePath;
+
+    /** One consolidated credit statement per reinsurer instead of one credit note per credit row. */
+    boolean consolidateCredits;
+
+    /** Export every calculated debit and credit line to a results file as the rows are processed. */
+    boolean export;
+
+    /** Results export path; {@code .csv} for CSV, columnar otherwise. Defaults to {@code <workbook>.results.bin}. */
+    String exportPath;
+
+    /** Print the summary of an exported results file instead of a run. */
+    String dumpResultsPath;
+
+    /** Only check the workbook and write a report; no notes are generated and nothing is saved. */
+    boolean validate;
+
+    /** Validation report; defaults to {@code <workbook>.validation.csv}. */
+    String validateReport;
+
+    /** Print a line per row (generated / skipped); off by default, only totals and errors are printed. */
+    boolean verbose;
+
+    /** Print a progress line every N seconds; 0 = off. */
+    int progressSeconds;
+
+    /** Run summary (JSON); defaults to {@code <workbook>.metrics.json}. */
+    String metricsPath;
+
+    /** Service mode: keep running and process every workbook dropped into this folder. */
+    String watchDir;
+
+    /** Currency code printed before every amount on the notes. */
+    String currency = "USD";
+
+    /** Batch mode: a folder of workbooks or a list file ({@code workbook[,currency[,cedent]]} per line). */
+    String batchPath;
+
+    /** Batch mode: how many workbooks are processed at the same time. */
+    int shards = 2;
+
+    /** HTTP API: port to listen on (0 = off) and the address to bind, local only by default. */
+    int httpPort;
+    String httpHost = "127.0.0.1";
+
+    static RunOptions parse(String[] args) {
+        RunOptions opts = new RunOptions();
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                opts.threads = parseThreads(arg.substring("--threads=".length()));
+            } else if (arg.equals("--streaming")) {
+                opts.streaming = true;
+            } else if (arg.startsWith("--results=")) {
+                opts.resultsPath = arg.substring("--results=".length());
+            } else if (arg.equals("--journal")) {
+                opts.journal = true;
+            } else if (arg.equals("--index")) {
+                opts.useIndex = true;
+            } else if (arg.equals("--no-open")) {
+                opts.openOutputFolder = false;
+            } else if (arg.startsWith("--format=")) {
+                opts.format = parseFormat(arg.substring("--format=".length()));
+            } else if (arg.equals("--archive")) {
+                opts.archive = true;
+            } else if (arg.startsWith("--archive=")) {
+                opts.archive = true;
+                opts.archivePath = arg.substring("--archive=".length());
+            } else if (arg.equals("--consolidate-credits")) {
+                opts.consolidateCredits = true;
+            } else if (arg.equals("--export")) {
+                opts.export = true;
+            } else if (arg.startsWith("--export=")) {
+                opts.export = true;
+                opts.exportPath = arg.substring("--export=".length());
+            } else if (arg.startsWith("--dump-results=")) {
+                opts.dumpResultsPath = arg.substring("--dump-results=".length());
+            } else if (arg.equals("--validate")) {
+                opts.validate = true;
+            } else if (arg.startsWith("--validate=")) {
+                opts.validate = true;
+                opts.validateReport = arg.substring("--validate=".length());
+            } else if (arg.equals("--verbose")) {
+                opts.verbose = true;
+            } else if (arg.startsWith("--progress=")) {
+                opts.progressSeconds = parsePositive("--progress", arg.substring("--progress=".length()));
+            } else if (arg.startsWith("--metrics=")) {
+                opts.metricsPath = arg.substring("--metrics=".length());
+            } else if (arg.startsWith("--watch=")) {
+                opts.watchDir = arg.substring("--watch=".length());
+            } else if (arg.startsWith("--currency=")) {
+                opts.currency = parseCurrency(arg.substring("--currency=".length()));
+            } else if (arg.startsWith("--batch=")) {
+                opts.batchPath = arg.substring("--batch=".length());
+            } else if (arg.startsWith("--shards=")) {
+                opts.shards = parsePositive("--shards", arg.substring("--shards=".length()));
+            } else if (arg.startsWith("--http=")) {
+                String value = arg.substring("--http=".length());
+                int colon = value.lastIndexOf(':');
+                if (colon >= 0) {
+                    opts.httpHost = value.substring(0, colon);
+                    value = value.substring(colon + 1);
+                }
+                opts.httpPort = parsePositive("--http", value);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (opts.journal && opts.streaming) {
+            throw new IllegalArgumentException("--journal cannot be combined with --streaming (the input workbook is not rewritten)");
+        }
+        if (opts.journal && opts.archive) {
+            throw new IllegalArgumentException("--journal cannot be combined with --archive (journaled rows would point into an unfinished archive)");
+        }
+        if (opts.journal && opts.consolidateCredits) {
+            throw new IllegalArgumentException("--journal cannot be combined with --consolidate-credits (statements are only written at the end of the run)");
+        }
+        if (opts.watchDir != null && (opts.resultsPath != null || opts.archivePath != null || opts.metricsPath != null
+                || opts.exportPath != null)) {
+            throw new IllegalArgumentException("--watch cannot be combined with --results, --archive=PATH, --export=PATH or --metrics (each job writes its own files)");
+        }
+        if (opts.watchDir != null && (opts.journal || opts.useIndex)) {
+            // each job is a fresh copy of the workbook in its own folder: its journal or index would never be found again
+            throw new IllegalArgumentException("--watch cannot be combined with --journal or --index");
+        }
+        if (opts.watchDir != null && opts.httpPort > 0) {
+            throw new IllegalArgumentException("--watch cannot be combined with --http (run two instances instead)");
+        }
+        if (opts.validate && (opts.watchDir != null || opts.httpPort > 0 || opts.batchPath != null)) {
+            throw new IllegalArgumentException("--validate cannot be combined with --watch, --http or --batch");
+        }
+        if (opts.validate && (opts.export || opts.archive || opts.useIndex || opts.journal)) {
+            // a validation writes nothing but its report, so these would silently do nothing
+            throw new IllegalArgumentException("--validate cannot be combined with --export, --archive, --index or --journal");
+        }
+        if (opts.dumpResultsPath != null && (opts.validate || opts.watchDir != null || opts.httpPort > 0 || opts.batchPath != null)) {
+            throw new IllegalArgumentException("--dump-results cannot be combined with --validate, --watch, --http or --batch");
+        }
+        if (opts.batchPath != null && (opts.watchDir != null || opts.httpPort > 0)) {
+            throw new IllegalArgumentException("--batch cannot be combined with --watch or --http");
+        }
+        if (opts.batchPath != null && (opts.resultsPath != null || opts.archivePath != null || opts.exportPath != null)) {
+            throw new IllegalArgumentException("--batch cannot be combined with --results, --archive=PATH or --export=PATH (each workbook writes its own files)");
+        }
+        return opts;
+    }
+
+    /**
+     * Options for one workbook of a batch: the same settings with the workbook's currency. The batch
+     * summary takes {@code --metrics}, so each workbook writes its own {@code <workbook>.metrics.json}.
+     */
+    RunOptions forShard(String shardCurrency) {
+        RunOptions shard = new RunOptions();
+        shard.threads = threads;
+        shard.streaming = streaming;
+        shard.journal = journal;
+        shard.useIndex = useIndex;
+        shard.openOutputFolder = false;
+        shard.format = format;
+        shard.archive = archive;
+        shard.consolidateCredits = consolidateCredits;
+        shard.export = export;
+        shard.verbose = verbose;
+        shard.progressSeconds = progressSeconds;
+        shard.currency = shardCurrency;
+        return shard;
+    }
+
+    /** Three-letter ISO 4217 style code, upper-cased. */
+    static String parseCurrency(String value) {
+        String code = value.trim();
+        if (code.length() == 3 && isLetter(code.charAt(0)) && isLetter(code.charAt(1)) && isLetter(code.charAt(2))) {
+            return code.toUpperCase(Locale.ROOT);
+        }
+        throw new IllegalArgumentException("--currency expects a three-letter code such as USD or EUR: " + value);
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    private static int parseThreads(String value) {
+        if (value.equalsIgnoreCase("virtual")) return WorkerPools.VIRTUAL;
+        if (value.equalsIgnoreCase("auto")) return Runtime.getRuntime().availableProcessors();
+        try {
+            int n = Integer.parseInt(value.trim());
+            if (n >= 1) return n;
+        } catch (NumberFormatException ignored) {
+            // fall through
+        }
+        throw new IllegalArgumentException("--threads expects a positive number, 'auto' or 'virtual': " + value);
+    }
+
+    private static NoteOutput.Format parseFormat(String value) {
+        switch (value.trim().toLowerCase()) {
+            case "docx": return NoteOutput.Format.DOCX;
+            case "pdf":  return NoteOutput.Format.PDF;
+            case "both": return NoteOutput.Format.BOTH;
+            default:     throw new IllegalArgumentException("--format expects docx, pdf or both: " + value);
+        }
+    }
+
+    private static int parsePositive(String option, String value) {
+        try {
+            int n = Integer.parseInt(value.trim());
+            if (n >= 1) return n;
+        } catch (NumberFormatException ignored) {
+            // fall through
+        }
+        throw new IllegalArgumentException(option + " expects a positive number: " + value);
+    }
+
+    static void printUsage() {
+        System.err.println("Usage: java -jar DebitCreditNoteForReinsurance.jar [options]");
+        System.err.println("  --threads=N|auto|virtual   render notes on N worker threads (default 1 = serial)");
+        System.err.println("  --streaming                stream the workbook (SAX) and write results to a separate workbook");
+        System.err.println("  --results=PATH             results workbook for --streaming (default <input>-results.xlsx)");
+        System.err.println("  --journal                  journal finished rows and replay them after a crash; save atomically");
+        System.err.println("  --index                    keep <workbook>.idx to skip unchanged rows and re-issue changed ones");
+        System.err.println("  --format=docx|pdf|both     note files to write (default docx)");
+        System.err.println("  --archive[=PATH]           write all notes of the run into one ZIP with a manifest.csv");
+        System.err.println("  --consolidate-credits      one credit statement per reinsurer instead of one credit note per row");
+        System.err.println("  --export[=PATH]            export calculated amounts per note (default <workbook>.results.bin; .csv for CSV)");
+        System.err.println("  --dump-results=PATH        print the line counts and column sums of an --export file (--verbose: every line)");
+        System.err.println("  --validate[=REPORT]        check both sheets and write a report (default <workbook>.validation.csv); no notes");
+        System.err.println("  --no-open                  do not open the output folder when the run finishes");
+        System.err.println("  --verbose                  print a line for every generated or skipped row");
+        System.err.println("  --progress=SECONDS         print a progress line every SECONDS seconds");
+        System.err.println("  --metrics=PATH             run summary JSON (default <workbook>.metrics.json)");
+        System.err.println("  --currency=CODE            currency printed before the amounts (default USD)");
+        System.err.println("  --batch=DIR|LIST           process several workbooks in parallel, each with its own currency");
+        System.err.println("  --shards=N                 workbooks processed at the same time in --batch mode (default 2)");
+        System.err.println("  --watch=DIR                service mode: process every workbook dropped into DIR, one job folder each");
+        System.err.println("  --http=[HOST:]PORT         HTTP API generating single notes from JSON (binds 127.0.0.1 by default)");
+    }
+}
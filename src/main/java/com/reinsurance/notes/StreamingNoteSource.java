@@ -0,0 +1,523 @@
+package com.reinsurance.notes;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming source for very large workbooks.
+ *
+ * The input is read with POI's event API ({@link XSSFReader} + shared strings) so the sheet DOM is never
+ * built: "CreditNoteDetails" is parsed up front into compact rows (it has to be indexed by debit note
+ * anyway) and the main sheet is handed to the generator one row at a time. The input workbook is left
+ * untouched; every processed row is copied, with its calculated columns and "Processed" flag, into a
+ * separate results workbook written through {@link SXSSFWorkbook}.
+ *
+ * Because the input is never written, the "Processed" flags and auto-filled document dates of earlier
+ * runs live only in the results workbook. When it already exists it is read on open: its flags and
+ * dates are laid over the matching input rows (by "Source Row"), so a rerun skips what was already
+ * issued, and rows this run does not touch are carried forward into the new results workbook.
+ */
+final class StreamingNoteSource implements NoteSource {
+
+    private static final String CREDIT_SHEET = "CreditNoteDetails";
+    private static final String SOURCE_ROW   = "Source Row";
+    private static final int RESULTS_WINDOW  = 100;
+    private static final int MAIN_DATE_COL      = 1;
+    private static final int MAIN_PROCESSED_COL = 21;
+    private static final int MAIN_COLUMNS       = 22; // input 0-10, results 11-20, "Processed" 21
+
+    private final OPCPackage pkg;
+    private final XSSFReader reader;
+    private final ReadOnlySharedStringsTable sst;
+    private final String resultsPath;
+
+    private final List<NoteRow> creditRows = new ArrayList<>();
+    private Map<String,Integer> creditHeader = Collections.emptyMap();
+
+    private final SXSSFWorkbook results = new SXSSFWorkbook(RESULTS_WINDOW);
+    private ResultSheet mainResults;
+    private ResultSheet creditResults;
+
+    // rows of an earlier results workbook by 0-based source row
+    private final Map<Integer,StreamedRow> previousMain = new HashMap<>();
+    private final Map<Integer,StreamedRow> previousCredit = new HashMap<>();
+
+    private StreamingNoteSource(OPCPackage pkg, String resultsPath) throws IOException, OpenXML4JException, SAXException {
+        this.pkg = pkg;
+        this.reader = new XSSFReader(pkg);
+        this.sst = new ReadOnlySharedStringsTable(pkg);
+        this.resultsPath = resultsPath;
+    }
+
+    static StreamingNoteSource open(String excelFilePath, String resultsPath) throws IOException {
+        File excel = new File(excelFilePath);
+        if (!excel.exists()) throw new FileNotFoundException(excelFilePath);
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(excel, PackageAccess.READ);
+        } catch (InvalidFormatException e) {
+            throw new IOException("Not a valid .xlsx workbook: " + excelFilePath, e);
+        }
+        try {
+            StreamingNoteSource source = new StreamingNoteSource(pkg, resultsPath);
+            source.loadPreviousResults();
+            source.loadCreditSheet();
+            return source;
+        } catch (OpenXML4JException | SAXException e) {
+            pkg.revert();
+            throw new IOException("Unable to stream workbook " + excelFilePath, e);
+        } catch (IOException | RuntimeException e) {
+            pkg.revert();
+            throw e;
+        }
+    }
+
+    /** Default results workbook: {@code <name>-results.xlsx} next to the input. */
+    static String defaultResultsPath(String excelFilePath) {
+        String base = excelFilePath.toLowerCase().endsWith(".xlsx")
+                ? excelFilePath.substring(0, excelFilePath.length() - 5)
+                : excelFilePath;
+        return base + "-results.xlsx";
+    }
+
+    private void loadCreditSheet() throws IOException, OpenXML4JException, SAXException {
+        XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+        while (it.hasNext()) {
+            try (InputStream in = it.next()) {
+                if (!CREDIT_SHEET.equals(it.getSheetName())) continue;
+                parse(in, sst, row -> {
+                    if (row.getRowNum() == 0) {
+                        creditHeader = BrokerDebitCreditGenerator.readHeaderMap(row);
+                        creditResults = new ResultSheet(results.createSheet(CREDIT_SHEET), row, 0, previousCredit);
+                    } else {
+                        Integer processedCol = creditHeader.get("processed");
+                        if (processedCol != null) row.carryOver(previousCredit.get(row.getRowNum()), processedCol, -1);
+                        creditRows.add(row);
+                    }
+                });
+                if (creditResults == null) creditResults = new ResultSheet(results.createSheet(CREDIT_SHEET), null, 0, previousCredit);
+                return;
+            }
+        }
+    }
+
+    /** Reads the flags, dates and rows of an earlier results workbook at {@link #resultsPath}, if any. */
+    private void loadPreviousResults() throws IOException, OpenXML4JException, SAXException {
+        File previous = new File(resultsPath);
+        if (!previous.isFile()) return;
+        OPCPackage resultsPkg;
+        try {
+            resultsPkg = OPCPackage.open(previous, PackageAccess.READ);
+        } catch (InvalidFormatException e) {
+            throw new IOException("Not a valid results workbook: " + resultsPath, e);
+        }
+        try {
+            XSSFReader resultsReader = new XSSFReader(resultsPkg);
+            ReadOnlySharedStringsTable resultsSst = new ReadOnlySharedStringsTable(resultsPkg);
+            XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) resultsReader.getSheetsData();
+            while (it.hasNext()) {
+                try (InputStream in = it.next()) {
+                    Map<Integer,StreamedRow> target = CREDIT_SHEET.equals(it.getSheetName()) ? previousCredit : previousMain;
+                    int[] sourceRowCol = {-1};
+                    parse(in, resultsSst, row -> {
+                        if (row.getRowNum() == 0) {
+                            for (int i = 0; i < row.getLastCellNum(); i++) {
+                                if (SOURCE_ROW.equals(row.getString(i))) sourceRowCol[0] = i;
+                            }
+                        } else if (sourceRowCol[0] >= 0 && row.cells.length > sourceRowCol[0]
+                                && row.cells[sourceRowCol[0]] instanceof Double) {
+                            int sourceRow = (int) (double) (Double) row.cells[sourceRowCol[0]] - 1;
+                            Object[] cells = Arrays.copyOf(row.cells, sourceRowCol[0]);
+                            target.put(sourceRow, new StreamedRow(sourceRow, cells, cells.length));
+                        }
+                    });
+                }
+            }
+        } finally {
+            resultsPkg.revert();
+        }
+    }
+
+    @Override
+    public Map<String,Integer> getCreditHeader() {
+        return creditHeader;
+    }
+
+    @Override
+    public Iterable<NoteRow> getCreditRows() {
+        return creditRows;
+    }
+
+    @Override
+    public void forEachMainRow(MainRowHandler handler) throws Exception {
+        XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+        if (!it.hasNext()) throw new IOException("Workbook has no sheets");
+
+        try (InputStream in = it.next()) {
+            String sheetName = it.getSheetName();
+            int[] next = {1}; // next row index the generator expects
+            parse(in, sst, row -> {
+                int r = row.getRowNum();
+                if (r == 0) {
+                    mainResults = new ResultSheet(results.createSheet(sheetName), row, MAIN_COLUMNS, previousMain);
+                    return;
+                }
+                // rows absent from the sheet XML are reported as missing, like Sheet.getRow() == null
+                for (; next[0] < r; next[0]++) handler.handle(next[0], null);
+                row.carryOver(previousMain.get(r), MAIN_PROCESSED_COL, MAIN_DATE_COL);
+                handler.handle(r, row);
+                next[0] = r + 1;
+            });
+            if (mainResults == null) mainResults = new ResultSheet(results.createSheet(sheetName), null, MAIN_COLUMNS, previousMain);
+        }
+    }
+
+    @Override
+    public void mainRowDone(NoteRow row) {
+        mainResults.append((StreamedRow) row);
+    }
+
+    @Override
+    public void creditRowDone(NoteRow row) {
+        creditResults.append((StreamedRow) row);
+    }
+
+    @Override
+    public void save() throws IOException {
+        if (mainResults != null) mainResults.carryForward();
+        if (creditResults != null) creditResults.carryForward();
+        File out = new File(resultsPath);
+        if (out.getParentFile() != null) out.getParentFile().mkdirs();
+        try (FileOutputStream fos = new FileOutputStream(out)) {
+            results.write(fos);
+        }
+    }
+
+    @Override
+    public String describeSaveTarget() {
+        return "Results Written to " + resultsPath;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            results.close();
+        } finally {
+            pkg.revert(); // opened read-only; never write the input back
+        }
+    }
+
+    // ---------- Results ----------
+
+    /**
+     * Results sheet: the input header plus a trailing "Source Row" column, placed after every column
+     * the generator writes; rows appended in completion order.
+     */
+    private static final class ResultSheet {
+        private final Sheet sheet;
+        private final int sourceRowCol;
+        private final Map<Integer,StreamedRow> previous;
+        private final BitSet appended = new BitSet();
+        private int nextRow;
+
+        ResultSheet(Sheet sheet, StreamedRow header, int minColumns, Map<Integer,StreamedRow> previous) {
+            this.sheet = sheet;
+            this.sourceRowCol = Math.max(header != null ? header.getLastCellNum() : 0, Math.max(minColumns, 1));
+            this.previous = previous;
+            if (header != null) copyCells(header, sheet.createRow(nextRow++));
+            else sheet.createRow(nextRow++);
+            sheet.getRow(0).createCell(sourceRowCol).setCellValue(SOURCE_ROW);
+        }
+
+        void append(StreamedRow row) {
+            appended.set(row.getRowNum());
+            Row out = sheet.createRow(nextRow++);
+            copyCells(row, out);
+            out.createCell(sourceRowCol).setCellValue(row.getRowNum() + 1);
+        }
+
+        /** Appends the earlier results rows this run did not write again. */
+        void carryForward() {
+            previous.values().stream()
+                    .filter(row -> !appended.get(row.getRowNum()))
+                    .sorted((a, b) -> Integer.compare(a.getRowNum(), b.getRowNum()))
+                    .forEach(this::append);
+            previous.clear();
+        }
+
+        private void copyCells(StreamedRow row, Row out) {
+            for (int i = 0; i < row.cells.length && i < sourceRowCol; i++) {
+                Object v = row.cells[i];
+                if (v instanceof String) {
+                    out.createCell(i).setCellValue((String) v);
+                } else if (v instanceof Double) {
+                    Cell c = out.createCell(i);
+                    c.setCellValue((Double) v);
+                }
+            }
+        }
+    }
+
+    // ---------- Rows ----------
+
+    /**
+     * Row parsed from sheet XML. Cells hold a {@link String} (string cell), a {@link Double} (numeric
+     * cell) or {@code null} for everything POI would report as blank, formula, boolean or error.
+     */
+    static final class StreamedRow implements NoteRow {
+        private final int rowNum;
+        private Object[] cells;
+        private int lastCellNum;
+
+        StreamedRow(int rowNum, Object[] cells, int lastCellNum) {
+            this.rowNum = rowNum;
+            this.cells = cells;
+            this.lastCellNum = lastCellNum;
+        }
+
+        @Override
+        public int getRowNum() {
+            return rowNum;
+        }
+
+        @Override
+        public int getLastCellNum() {
+            return lastCellNum;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            for (int c = 0; c <= 10 && c < cells.length; c++) {
+                Object v = cells[c];
+                if (v instanceof String && !((String) v).trim().isEmpty()) return false;
+                if (v instanceof Double && (Double) v != 0) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public String getString(int idx) {
+            Object v = (idx < cells.length) ? cells[idx] : null;
+            if (v instanceof String) return ((String) v).trim();
+            if (v instanceof Double) return NoteFormats.cellText((Double) v);
+            return "";
+        }
+
+        @Override
+        public double getDouble(int idx) {
+            Object v = (idx < cells.length) ? cells[idx] : null;
+            if (v instanceof Double) return (Double) v;
+            if (v instanceof String) {
+                try { return Double.parseDouble(((String) v).replace(",", "").trim()); }
+                catch (Exception e) { return 0.0; }
+            }
+            return 0.0;
+        }
+
+        @Override
+        public void setString(int idx, String val) {
+            if (idx > 200) return;
+            set(idx, val);
+        }
+
+        @Override
+        public void setNumeric(int idx, double val) {
+            if (idx > 200) return;
+            set(idx, val);
+        }
+
+        /**
+         * Takes the "Processed" flag, and the auto-filled date at {@code dateCol} (-1 for none), from
+         * the same row of an earlier results workbook where this row has none.
+         */
+        void carryOver(StreamedRow previous, int processedCol, int dateCol) {
+            if (previous == null) return;
+            if (getString(processedCol).isEmpty() && !previous.getString(processedCol).isEmpty()) {
+                set(processedCol, previous.getString(processedCol));
+            }
+            if (dateCol >= 0 && getString(dateCol).isEmpty() && !previous.getString(dateCol).isEmpty()) {
+                set(dateCol, previous.getString(dateCol));
+            }
+        }
+
+        private void set(int idx, Object val) {
+            if (idx >= cells.length) cells = Arrays.copyOf(cells, idx + 1);
+            cells[idx] = val;
+            if (idx >= lastCellNum) lastCellNum = idx + 1;
+        }
+    }
+
+    // ---------- SAX parsing ----------
+
+    private interface RowCallback {
+        void row(StreamedRow row) throws Exception;
+    }
+
+    private static void parse(InputStream sheetXml, ReadOnlySharedStringsTable sst, RowCallback callback) throws IOException, SAXException {
+        XMLReader xml;
+        try {
+            xml = XMLHelper.newXMLReader();
+        } catch (ParserConfigurationException e) {
+            throw new IOException("No SAX parser available", e);
+        }
+        xml.setContentHandler(new SheetHandler(sst, callback));
+        try {
+            xml.parse(new InputSource(sheetXml));
+        } catch (SAXException e) {
+            if (e.getException() instanceof IOException) throw (IOException) e.getException();
+            if (e.getException() instanceof RuntimeException) throw (RuntimeException) e.getException();
+            throw e;
+        }
+    }
+
+    /** Minimal sheetN.xml handler: turns {@code <row>/<c>} elements into {@link StreamedRow}s. */
+    private static final class SheetHandler extends DefaultHandler {
+        private final ReadOnlySharedStringsTable sst;
+        private final RowCallback callback;
+
+        private int rowNum = -1;
+        private Object[] cells = new Object[32];
+        private int lastCellNum;
+
+        private int col;
+        private String type;
+        private boolean hasFormula;
+        private boolean hasValue;
+        private boolean inValue;
+        private boolean inInlineText;
+        private final StringBuilder text = new StringBuilder();
+
+        SheetHandler(ReadOnlySharedStringsTable sst, RowCallback callback) {
+            this.sst = sst;
+            this.callback = callback;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attrs) {
+            switch (localName) {
+                case "row": {
+                    String r = attrs.getValue("r");
+                    rowNum = (r != null) ? Integer.parseInt(r) - 1 : rowNum + 1;
+                    Arrays.fill(cells, 0, Math.min(lastCellNum, cells.length), null);
+                    lastCellNum = 0;
+                    col = -1;
+                    break;
+                }
+                case "c": {
+                    String ref = attrs.getValue("r");
+                    col = (ref != null) ? columnOf(ref) : col + 1;
+                    type = attrs.getValue("t");
+                    hasFormula = false;
+                    hasValue = false;
+                    text.setLength(0);
+                    break;
+                }
+                case "f":
+                    hasFormula = true;
+                    break;
+                case "v":
+                    inValue = true;
+                    hasValue = true;
+                    break;
+                case "t":
+                    if ("inlineStr".equals(type)) {
+                        inInlineText = true;
+                        hasValue = true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue || inInlineText) text.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v":
+                    inValue = false;
+                    break;
+                case "t":
+                    inInlineText = false;
+                    break;
+                case "c":
+                    endCell();
+                    break;
+                case "row":
+                    try {
+                        callback.row(new StreamedRow(rowNum, Arrays.copyOf(cells, lastCellNum), lastCellNum));
+                    } catch (Exception e) {
+                        throw new SAXException(e);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void endCell() {
+            if (col < 0) return;
+            if (col >= cells.length) cells = Arrays.copyOf(cells, Math.max(col + 1, cells.length * 2));
+            cells[col] = cellValue();
+            if (col >= lastCellNum) lastCellNum = col + 1;
+        }
+
+        // Same typing as XSSFCell: any formula reads as FORMULA, t="s"/"inlineStr"/"str" as STRING,
+        // t="b"/"e" as BOOLEAN/ERROR, otherwise NUMERIC when a value is present and BLANK when not.
+        private Object cellValue() {
+            if (hasFormula || !hasValue) return null;
+            if (type == null || "n".equals(type)) {
+                String v = text.toString().trim();
+                return v.isEmpty() ? null : Double.parseDouble(v); // <v></v> reads as blank, like POI
+            }
+            switch (type) {
+                case "s":         return sst.getItemAt(Integer.parseInt(text.toString().trim())).getString();
+                case "inlineStr":
+                case "str":       return text.toString();
+                default:          return null;
+            }
+        }
+
+        private static int columnOf(String ref) {
+            int col = 0;
+            for (int i = 0; i < ref.length(); i++) {
+                char ch = ref.charAt(i);
+                if (ch < 'A' || ch > 'Z') break;
+                col = col * 26 + (ch - 'A' + 1);
+            }
+            return col - 1;
+        }
+    }
+}
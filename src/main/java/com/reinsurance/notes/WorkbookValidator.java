@@ -0,0 +1,457 @@
+package com.reinsurance.notes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Pre-flight check of a workbook ({@code --validate[=REPORT]}): finds the rows a run would skip, misread
+ * or get wrong before any note is rendered. Nothing is written except the report; the workbook is not
+ * saved and no documents are created.
+ *
+ * Both sheets are read once on the calling thread into plain text snapshots (POI rows are not safe to
+ * read from several threads), then checked in ranges of {@link #RANGE_ROWS} rows: on the calling thread
+ * with the default {@code --threads=1}, on a worker pool otherwise. Per-range results (note numbers seen,
+ * reinsurer shares per debit) are merged in sheet order, so the report does not depend on the thread count.
+ *
+ * Rows flagged "Processed" are skipped by a run, so their inputs are not checked. They still count for
+ * the links between the sheets: their note numbers, the credit rows' debit notes and the share totals.
+ *
+ * Checks:
+ * <ul>
+ *   <li>CreditNoteDetails headers the generator looks up by name: missing required ones are errors,
+ *       missing result columns warnings (the values would not be written back);</li>
+ *   <li>numeric inputs that do not parse as numbers (a run silently reads them as 0);</li>
+ *   <li>main rows with no sum insured, cedent rate or share (a run skips them as incomplete);</li>
+ *   <li>duplicate "Debit Note No." and duplicate (given or derived) "Credit Note No." values, whose
+ *       note files would overwrite each other (unless both rows are processed);</li>
+ *   <li>credit rows with no or an unknown "Debit Note No." (never issued);</li>
+ *   <li>pending credit rows of a processed debit note, which a run only issues with {@code --index} (warning);</li>
+ *   <li>reinsurer shares of a debit note adding up to more than the main row's share.</li>
+ * </ul>
+ * Row numbers in the report are the 1-based numbers Excel shows.
+ */
+final class WorkbookValidator {
+
+    static final int RANGE_ROWS = 2048;
+
+    enum Severity { ERROR, WARNING }
+
+    /** One finding of the report. */
+    static final class Issue {
+        final Severity severity;
+        final String sheet;
+        final int row;        // 1-based as in Excel, 0 = whole sheet
+        final String column;
+        final String message;
+
+        Issue(Severity severity, String sheet, int row, String column, String message) {
+            this.severity = severity;
+            this.sheet = sheet;
+            this.row = row;
+            this.column = column;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return severity + " " + sheet + (row > 0 ? " row " + row : "") + (column.isEmpty() ? "" : " [" + column + "]")
+                    + ": " + message;
+        }
+    }
+
+    private static final String MAIN_SHEET = "Main";
+    private static final String CREDIT_SHEET = "CreditNoteDetails";
+    private static final double SHARE_TOLERANCE = 1e-9;
+
+    // main-sheet inputs by column index, as read by the generator
+    private static final int MAIN_COLUMNS = 16;
+    private static final int[] MAIN_NUMERIC = {6, 7, 8, 9, 10, 15};
+    private static final String[] MAIN_NAMES = {
+            "Debit Note No.", "Document Date", "Interest", "Insured", "Reinsured", "Period",
+            "Sum Insured", "Cedent Rate (%)", "Reinsurance Rate (%)", "Share (%)", "Brokerage (%)",
+            "", "", "", "", "Ceding Commission (%)"
+    };
+
+    // CreditNoteDetails columns by header; the snapshot keeps them in this order
+    private static final String[] CREDIT_REQUIRED = {"Debit Note No.", "Reinsurer Name", "Reinsurer Share (%)"};
+    private static final String[] CREDIT_INPUTS = {
+            "Debit Note No.", "Reinsurer Name", "Reinsurer Share (%)", "Credit Note No.",
+            "Reinsurance Rate (%)", "Brokerage (%)", "Ceding Commission (%)"
+    };
+    private static final int C_DEBIT = 0, C_REINSURER = 1, C_SHARE = 2, C_CREDIT_NO = 3;
+    private static final int MAIN_PROCESSED_COL = 21;
+    private static final int[] CREDIT_NUMERIC = {2, 4, 5, 6};
+    private static final String[] CREDIT_OPTIONAL = {"Credit Note No.", "Reinsured", "Reinsurer Address",
+            "Reinsurance Rate (%)", "Brokerage (%)", "Ceding Commission (%)"};
+    private static final String[] CREDIT_RESULTS = {"Fac Premium 100%", "Share Premium", "Ceding Commission (Amount)",
+            "Gross Brokerage", "Net Premium Payable To You", "Processed"};
+
+    /** Text of one row's cells, taken on the reading thread. */
+    private static final class Snapshot {
+        final int row;         // 0-based
+        final String[] cells;
+        final boolean processed;
+
+        Snapshot(int row, String[] cells, boolean processed) {
+            this.row = row;
+            this.cells = cells;
+            this.processed = processed;
+        }
+    }
+
+    /** What a range of main rows contributes to the report and to the credit checks. */
+    private static final class MainRange {
+        final List<Issue> issues = new ArrayList<>();
+        final Map<String, Integer> debitRows = new LinkedHashMap<>(); // normalized note no. -> 1-based row
+        final Set<Integer> processedRows = new HashSet<>();           // 1-based
+        final Map<String, Double> shares = new HashMap<>();
+        final Set<String> processedDebits = new HashSet<>();          // normalized note no.
+        int rows;
+        int processed;
+    }
+
+    /** What a range of credit rows contributes. */
+    private static final class CreditRange {
+        final List<Issue> issues = new ArrayList<>();
+        final Map<String, Integer> creditRows = new LinkedHashMap<>(); // normalized note no. -> 1-based row
+        final Set<Integer> processedRows = new HashSet<>();            // 1-based
+        final Map<String, Double> shareByDebit = new LinkedHashMap<>();
+        final Map<String, String> debitNoteNo = new HashMap<>();     // normalized -> as written
+        int rows;
+        int processed;
+    }
+
+    private final List<Issue> issues = new ArrayList<>();
+    private final Set<String> processedDebits = new HashSet<>();
+    private int mainRows;
+    private int creditRows;
+    private int processedRows;
+
+    private WorkbookValidator() {}
+
+    /** Validates {@code excelFilePath}, writes the report and prints a summary; true when there are no errors. */
+    static boolean run(RunOptions opts, String excelFilePath) throws Exception {
+        WorkbookValidator v = new WorkbookValidator();
+        long start = System.nanoTime();
+        // the checks only use the CPU, so virtual threads would just add scheduling
+        int threads = (opts.threads == WorkerPools.VIRTUAL) ? Runtime.getRuntime().availableProcessors() : opts.threads;
+
+        List<Snapshot> main = new ArrayList<>();
+        List<Snapshot> credit = new ArrayList<>();
+        Map<String, Integer> hdr;
+        // read-only: the streaming source never writes the input, the POI source is closed without saving
+        try (NoteSource source = opts.streaming
+                ? StreamingNoteSource.open(excelFilePath, StreamingNoteSource.defaultResultsPath(excelFilePath))
+                : PoiNoteSource.open(excelFilePath)) {
+            hdr = source.getCreditHeader();
+            source.forEachMainRow((r, row) -> {
+                if (row == null || row.isEmpty()) return;
+                String[] cells = new String[MAIN_COLUMNS];
+                for (int c = 0; c < MAIN_COLUMNS; c++) cells[c] = row.getString(c);
+                main.add(new Snapshot(r, cells, BrokerDebitCreditGenerator.isProcessedFlag(row.getString(MAIN_PROCESSED_COL))));
+            });
+            Integer[] cols = new Integer[CREDIT_INPUTS.length];
+            for (int i = 0; i < cols.length; i++) cols[i] = hdr.get(CREDIT_INPUTS[i].toLowerCase());
+            Integer processedCol = hdr.get("processed");
+            for (NoteRow crow : source.getCreditRows()) {
+                String[] cells = new String[CREDIT_INPUTS.length];
+                boolean blank = true;
+                for (int i = 0; i < cells.length; i++) {
+                    cells[i] = (cols[i] == null) ? "" : crow.getString(cols[i]);
+                    if (!cells[i].isEmpty()) blank = false;
+                }
+                boolean processed = processedCol != null
+                        && BrokerDebitCreditGenerator.isProcessedFlag(crow.getString(processedCol));
+                if (!blank) credit.add(new Snapshot(crow.getRowNum(), cells, processed));
+            }
+        }
+
+        v.checkCreditHeader(hdr, !credit.isEmpty());
+        ExecutorService pool = (threads == 1) ? null : WorkerPools.newPool("validate", threads);
+        try {
+            Map<String, Double> mainShares = v.checkMain(pool, main);
+            v.checkCredit(pool, credit, mainShares);
+        } finally {
+            if (pool != null) pool.shutdown();
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        File report = new File(opts.validateReport != null ? opts.validateReport : excelFilePath + ".validation.csv");
+        v.writeReport(report);
+        v.printSummary(report, millis);
+        return v.count(Severity.ERROR) == 0;
+    }
+
+    // ---------- Checks ----------
+
+    private void checkCreditHeader(Map<String, Integer> hdr, boolean hasRows) {
+        if (hdr.isEmpty()) {
+            if (!hasRows) issues.add(new Issue(Severity.WARNING, CREDIT_SHEET, 0, "", "Sheet missing or empty: no credit notes will be generated"));
+            return;
+        }
+        for (String name : CREDIT_REQUIRED) {
+            if (!hdr.containsKey(name.toLowerCase())) {
+                issues.add(new Issue(Severity.ERROR, CREDIT_SHEET, 1, name, "Required header missing"));
+            }
+        }
+        for (String name : CREDIT_OPTIONAL) {
+            if (!hdr.containsKey(name.toLowerCase())) {
+                issues.add(new Issue(Severity.WARNING, CREDIT_SHEET, 1, name, "Header missing; the default is used for every row"));
+            }
+        }
+        for (String name : CREDIT_RESULTS) {
+            if (!hdr.containsKey(name.toLowerCase())) {
+                issues.add(new Issue(Severity.WARNING, CREDIT_SHEET, 1, name, "Header missing; this value is not written back"));
+            }
+        }
+    }
+
+    // Returns the main share per normalized debit note no. for the credit checks
+    private Map<String, Double> checkMain(ExecutorService pool, List<Snapshot> rows) throws Exception {
+        List<MainRange> ranges = inRanges(pool, rows, this::checkMainRange);
+        Map<String, Integer> seen = new HashMap<>();
+        Map<String, Double> shares = new HashMap<>();
+        Set<Integer> processed = new HashSet<>();
+        for (MainRange range : ranges) {
+            issues.addAll(range.issues);
+            mainRows += range.rows;
+            processedRows += range.processed;
+            processed.addAll(range.processedRows);
+            processedDebits.addAll(range.processedDebits);
+            for (Map.Entry<String, Integer> e : range.debitRows.entrySet()) {
+                Integer first = seen.putIfAbsent(e.getKey(), e.getValue());
+                if (first != null && !(processed.contains(first) && processed.contains(e.getValue()))) {
+                    issues.add(new Issue(Severity.ERROR, MAIN_SHEET, e.getValue(), MAIN_NAMES[0],
+                            "Duplicate debit note no. (first on row " + first + "); the later note overwrites the earlier file"));
+                }
+            }
+            range.shares.forEach(shares::putIfAbsent);
+        }
+        return shares;
+    }
+
+    private MainRange checkMainRange(List<Snapshot> rows) {
+        MainRange out = new MainRange();
+        for (Snapshot s : rows) {
+            out.rows++;
+            int excelRow = s.row + 1;
+            // a processed row is skipped by a run: its inputs are not reported, but its share and note no. count
+            List<Issue> report = s.processed ? new ArrayList<>() : out.issues;
+            String debitNoteNo = s.cells[0];
+            if (debitNoteNo.isEmpty()) {
+                debitNoteNo = NoteFormats.fallbackDebitNoteNo(s.row);
+                report.add(new Issue(Severity.WARNING, MAIN_SHEET, excelRow, MAIN_NAMES[0],
+                        "No debit note no.; the run numbers it " + debitNoteNo + " and no credit row can link to it"));
+            }
+            String key = BrokerDebitCreditGenerator.normalizeNoteNo(debitNoteNo);
+            if (s.processed) {
+                out.processed++;
+                out.processedRows.add(excelRow);
+                out.processedDebits.add(key);
+            }
+
+            double[] values = new double[MAIN_COLUMNS];
+            for (int c : MAIN_NUMERIC) values[c] = number(s.cells[c], report, MAIN_SHEET, excelRow, MAIN_NAMES[c]);
+            if (values[6] == 0 || values[7] == 0 || values[9] == 0) {
+                report.add(new Issue(Severity.ERROR, MAIN_SHEET, excelRow, "",
+                        "Sum insured, cedent rate or share is missing or zero; the row is skipped as incomplete"));
+            }
+            for (int c : MAIN_NUMERIC) {
+                if (values[c] < 0) report.add(new Issue(Severity.WARNING, MAIN_SHEET, excelRow, MAIN_NAMES[c], "Negative value"));
+            }
+            if (values[9] > 100) {
+                report.add(new Issue(Severity.ERROR, MAIN_SHEET, excelRow, MAIN_NAMES[9], "Share above 100%"));
+            }
+
+            Integer first = out.debitRows.putIfAbsent(key, excelRow);
+            if (first == null) {
+                out.shares.put(key, values[9]);
+            } else if (!(s.processed && out.processedRows.contains(first))) {
+                out.issues.add(new Issue(Severity.ERROR, MAIN_SHEET, excelRow, MAIN_NAMES[0],
+                        "Duplicate debit note no. (first on row " + first + "); the later note overwrites the earlier file"));
+            }
+        }
+        return out;
+    }
+
+    private void checkCredit(ExecutorService pool, List<Snapshot> rows, Map<String, Double> mainShares) throws Exception {
+        List<CreditRange> ranges = inRanges(pool, rows, part -> checkCreditRange(part, mainShares));
+        Map<String, Integer> seen = new HashMap<>();
+        Set<Integer> processed = new HashSet<>();
+        Map<String, Double> shareByDebit = new LinkedHashMap<>();
+        Map<String, String> debitNoteNo = new HashMap<>();
+        for (CreditRange range : ranges) {
+            issues.addAll(range.issues);
+            creditRows += range.rows;
+            processedRows += range.processed;
+            processed.addAll(range.processedRows);
+            for (Map.Entry<String, Integer> e : range.creditRows.entrySet()) {
+                Integer first = seen.putIfAbsent(e.getKey(), e.getValue());
+                if (first != null && !(processed.contains(first) && processed.contains(e.getValue()))) {
+                    issues.add(new Issue(Severity.ERROR, CREDIT_SHEET, e.getValue(), "Credit Note No.",
+                            "Duplicate credit note no. (first on row " + first + "); the later note overwrites the earlier file"));
+                }
+            }
+            range.shareByDebit.forEach((k, share) -> shareByDebit.merge(k, share, Double::sum));
+            range.debitNoteNo.forEach(debitNoteNo::putIfAbsent);
+        }
+        for (Map.Entry<String, Double> e : shareByDebit.entrySet()) {
+            double mainShare = mainShares.get(e.getKey());
+            if (e.getValue() > mainShare + SHARE_TOLERANCE) {
+                issues.add(new Issue(Severity.ERROR, CREDIT_SHEET, 0, "Reinsurer Share (%)",
+                        "Reinsurer shares of " + debitNoteNo.get(e.getKey()) + " add up to " + e.getValue()
+                                + "%, more than the main share of " + mainShare + "%"));
+            }
+        }
+    }
+
+    private CreditRange checkCreditRange(List<Snapshot> rows, Map<String, Double> mainShares) {
+        CreditRange out = new CreditRange();
+        for (Snapshot s : rows) {
+            out.rows++;
+            int excelRow = s.row + 1;
+            // a processed row is skipped by a run: its inputs are not reported, but its share and note no. count
+            List<Issue> report = s.processed ? new ArrayList<>() : out.issues;
+            if (s.processed) {
+                out.processed++;
+                out.processedRows.add(excelRow);
+            }
+            double[] values = new double[CREDIT_INPUTS.length];
+            for (int c : CREDIT_NUMERIC) values[c] = number(s.cells[c], report, CREDIT_SHEET, excelRow, CREDIT_INPUTS[c]);
+
+            String debitNoteNo = s.cells[C_DEBIT];
+            if (debitNoteNo.isEmpty()) {
+                report.add(new Issue(Severity.ERROR, CREDIT_SHEET, excelRow, CREDIT_INPUTS[C_DEBIT],
+                        "No debit note no.; the row is never issued"));
+                continue;
+            }
+            String key = BrokerDebitCreditGenerator.normalizeNoteNo(debitNoteNo);
+            if (!mainShares.containsKey(key)) {
+                report.add(new Issue(Severity.ERROR, CREDIT_SHEET, excelRow, CREDIT_INPUTS[C_DEBIT],
+                        "Debit note " + debitNoteNo + " not found on the main sheet; the row is never issued"));
+                continue;
+            }
+            if (s.cells[C_REINSURER].isEmpty()) {
+                report.add(new Issue(Severity.WARNING, CREDIT_SHEET, excelRow, CREDIT_INPUTS[C_REINSURER],
+                        "No reinsurer name; the note is addressed to \"(Reinsurer)\""));
+            }
+            if (values[C_SHARE] <= 0) {
+                report.add(new Issue(Severity.WARNING, CREDIT_SHEET, excelRow, CREDIT_INPUTS[C_SHARE],
+                        "Reinsurer share is missing or not positive"));
+            }
+            if (!s.processed && processedDebits.contains(key)) {
+                report.add(new Issue(Severity.WARNING, CREDIT_SHEET, excelRow, CREDIT_INPUTS[C_DEBIT],
+                        "Debit note " + debitNoteNo + " is already processed; a run issues this row only with --index"));
+            }
+
+            String creditNoteNo = s.cells[C_CREDIT_NO].isEmpty()
+                    ? BrokerDebitCreditGenerator.derivedCreditNoteNo(debitNoteNo, s.cells[C_REINSURER])
+                    : s.cells[C_CREDIT_NO];
+            Integer first = out.creditRows.putIfAbsent(BrokerDebitCreditGenerator.normalizeNoteNo(creditNoteNo), excelRow);
+            if (first != null && !(s.processed && out.processedRows.contains(first))) {
+                out.issues.add(new Issue(Severity.ERROR, CREDIT_SHEET, excelRow, CREDIT_INPUTS[C_CREDIT_NO],
+                        "Duplicate credit note no. " + creditNoteNo + " (first on row " + first + "); the later note overwrites the earlier file"));
+            }
+            out.shareByDebit.merge(key, values[C_SHARE], Double::sum);
+            out.debitNoteNo.putIfAbsent(key, debitNoteNo);
+        }
+        return out;
+    }
+
+    // Same parsing as the generator's getDouble, but an unparseable value is reported instead of read as 0
+    private static double number(String text, List<Issue> issues, String sheet, int row, String column) {
+        String s = text.replace(",", "").trim();
+        if (s.isEmpty()) return 0.0;
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            issues.add(new Issue(Severity.ERROR, sheet, row, column, "Not a number: \"" + text + "\" (a run reads it as 0)"));
+            return 0.0;
+        }
+    }
+
+    // Splits rows into RANGE_ROWS chunks, checks them on the pool (no pool: on this thread) and returns the
+    // results in sheet order
+    private static <R> List<R> inRanges(ExecutorService pool, List<Snapshot> rows, RangeCheck<R> check) throws Exception {
+        List<Future<R>> futures = new ArrayList<>();
+        List<R> results = new ArrayList<>();
+        for (int from = 0; from < rows.size(); from += RANGE_ROWS) {
+            List<Snapshot> part = rows.subList(from, Math.min(from + RANGE_ROWS, rows.size()));
+            if (pool == null) {
+                results.add(check.apply(part));
+                continue;
+            }
+            Callable<R> task = () -> check.apply(part);
+            futures.add(pool.submit(task));
+        }
+        for (Future<R> f : futures) {
+            try {
+                results.add(f.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) throw (Exception) cause;
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    private interface RangeCheck<R> {
+        R apply(List<Snapshot> rows);
+    }
+
+    // ---------- Report ----------
+
+    private int count(Severity severity) {
+        int n = 0;
+        for (Issue issue : issues) if (issue.severity == severity) n++;
+        return n;
+    }
+
+    private void writeReport(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write("Severity,Sheet,Row,Column,Message\n");
+            for (Issue issue : issues) {
+                out.write(issue.severity + "," + csv(issue.sheet) + "," + (issue.row > 0 ? issue.row : "") + ","
+                        + csv(issue.column) + "," + csv(issue.message) + "\n");
+            }
+        }
+    }
+
+    private void printSummary(File report, long millis) {
+        int shown = 0;
+        for (Issue issue : issues) {
+            if (shown++ == 20) {
+                System.out.println("   ... " + (issues.size() - 20) + " more in the report");
+                break;
+            }
+            System.out.println((issue.severity == Severity.ERROR ? "❌ " : "⚠️ ") + issue);
+        }
+        System.out.println("🔎 Validated " + mainRows + " main rows and " + creditRows + " credit rows"
+                + (processedRows > 0 ? " (" + processedRows + " already processed, inputs not checked)" : "") + " in " + millis + " ms: "
+                + count(Severity.ERROR) + " errors, " + count(Severity.WARNING) + " warnings; report: " + report.getPath());
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
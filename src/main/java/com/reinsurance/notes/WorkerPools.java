@@ -0,0 +1,49 @@
+package com.reinsurance.notes;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor factory shared by the parallel note pipeline.
+ *
+ * The project compiles for Java 19, where virtual threads are still a preview API, so the
+ * virtual-thread executor is looked up reflectively and used only when the running JVM has it.
+ */
+final class WorkerPools {
+
+    /** Thread count meaning "one virtual thread per task". */
+    static final int VIRTUAL = -1;
+
+    private WorkerPools() {}
+
+    static ExecutorService newPool(String name, int threads) {
+        if (threads == VIRTUAL) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) return virtual;
+            threads = Runtime.getRuntime().availableProcessors();
+            System.out.println("⚠️ Virtual threads not available on this JVM, using " + threads + " worker threads.");
+        }
+        return Executors.newFixedThreadPool(threads, namedFactory(name));
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null; // older JVM, or preview features not enabled
+        }
+    }
+
+    private static ThreadFactory namedFactory(String name) {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,100 @@
+package com.reinsurance.notes;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CreditStatementsTest {
+
+    private static final LocalDateTime RUN = LocalDateTime.of(2026, 10, 16, 9, 30, 5);
+
+    @Test
+    void numberCarriesTheRunStamp() {
+        CreditStatements statements = new CreditStatements(RUN);
+        statements.add("Munich Re", "", line("CN-1"));
+        statements.add(" munich re ", "Königinstraße 107", line("CN-2"));
+
+        List<CreditStatements.Statement> all = new ArrayList<>(statements.statements());
+        assertEquals(1, all.size());
+        assertEquals("CS-MunichRe-20261016-093005", all.get(0).statementNo());
+        assertEquals("Königinstraße 107", all.get(0).reinsurerAddress);
+        assertEquals(2, all.get(0).lines.size());
+    }
+
+    @Test
+    void collidingNamesGetDistinctNumbers() {
+        CreditStatements statements = new CreditStatements(RUN);
+        statements.add("Swiss Re", "", line("CN-1"));
+        statements.add("Swiss-Re", "", line("CN-2"));
+        statements.add("SWISS RE.", "", line("CN-3"));
+
+        List<String> numbers = new ArrayList<>();
+        for (CreditStatements.Statement st : statements.statements()) numbers.add(st.fileName());
+        assertEquals(List.of("CS-SwissRe-20261016-093005", "CS-SwissRe-20261016-093005-2", "CS-SWISSRE-20261016-093005-3"),
+                numbers);
+    }
+
+    @Test
+    void laterRunsGetOtherNumbers() {
+        CreditStatements first = new CreditStatements(RUN);
+        CreditStatements second = new CreditStatements(RUN.plusMinutes(1));
+        first.add("Hannover Re", "", line("CN-1"));
+        second.add("Hannover Re", "", line("CN-2"));
+        assertEquals("CS-HannoverRe-20261016-093005", first.statements().iterator().next().statementNo());
+        assertEquals("CS-HannoverRe-20261016-093105", second.statements().iterator().next().statementNo());
+    }
+
+    @Test
+    void repeatedDebitNoteAddsItsCreditRowsOnce() {
+        CreditStatements statements = new CreditStatements(RUN);
+        NoteRow first = new Row(1);
+        NoteRow second = new Row(2);
+        // main rows 3 and 9 both carry debit note RI/D3, so both hand in its two credit rows
+        for (int mainRow = 0; mainRow < 2; mainRow++) {
+            boolean added = statements.add("Munich Re", "", line(first, "CN-1"));
+            assertEquals(mainRow == 0, added);
+            assertEquals(mainRow == 0, statements.add("Munich Re", "", line(second, "CN-2")));
+        }
+        assertTrue(statements.add("Munich Re", "", line("CN-3")));
+        assertFalse(statements.add("Hannover Re", "", line(first, "CN-1")));
+
+        List<CreditStatements.Statement> all = new ArrayList<>(statements.statements());
+        assertEquals(1, all.size());
+        CreditStatements.Statement st = all.get(0);
+        assertEquals(3, st.lines.size());
+        assertEquals(300.0, st.totalSharePremium);
+        assertEquals(30.0, st.totalGrossBrokerage);
+        assertEquals(255.0, st.totalNetPayable);
+    }
+
+    private static CreditStatements.Line line(String creditNoteNo) {
+        return line(new Row(0), creditNoteNo);
+    }
+
+    private static CreditStatements.Line line(NoteRow row, String creditNoteNo) {
+        return new CreditStatements.Line(row, creditNoteNo, "Insured", "2026", 100.0, 10.0, 85.0, 0L);
+    }
+
+    /** A credit row; statements only keep it to flag it later. */
+    private static final class Row implements NoteRow {
+        private final int rowNum;
+
+        Row(int rowNum) {
+            this.rowNum = rowNum;
+        }
+
+        @Override public int getRowNum()                      { return rowNum; }
+        @Override public int getLastCellNum()                 { return -1; }
+        @Override public boolean isEmpty()                    { return true; }
+        @Override public String getString(int idx)           { return ""; }
+        @Override public double getDouble(int idx)           { return 0.0; }
+        @Override public void setString(int idx, String val)  { }
+        @Override public void setNumeric(int idx, double val) { }
+    }
+}
@@ -0,0 +1,119 @@
+package com.reinsurance.notes;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JournalingNoteSourceTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void tornTailIsTruncatedBeforeAppending() throws Exception {
+        File excel = workbook();
+        File journal = journal(excel,
+                "C\t1\tn5=12.5\ts6=Yes\t.\n",
+                "C\t2\tn5=7");                           // torn: no end marker, no newline
+
+        List<String> lines = reopenAndFinishCreditRow2(excel, journal);
+
+        assertEquals(List.of(header(excel), "C\t1\tn5=12.5\ts6=Yes\t.", "C\t2\tn5=99.0\ts6=Yes\t."), lines);
+    }
+
+    @Test
+    void unparsableEntryIsTreatedAsTornTail() throws Exception {
+        File excel = workbook();
+        File journal = journal(excel,
+                "C\t1\tn5=12.5\ts6=Yes\t.\n",
+                "C\t2\tn5=1.2.3\ts6=Yes\t.\n",          // garbled number
+                "C\t3\tn5=1.0\ts6=Yes\t.\n");           // after the garbled line: not replayed
+
+        try (JournalingNoteSource source = JournalingNoteSource.open(excel.getPath())) {
+            assertEquals(1, source.getReplayedCount());
+        }
+        assertEquals(List.of(header(excel), "C\t1\tn5=12.5\ts6=Yes\t."),
+                Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void replayRestoresCellsOfCompleteEntries() throws Exception {
+        File excel = workbook();
+        journal(excel, "C\t1\tn5=12.5\ts6=Yes\\tNo\t.\n");
+
+        try (JournalingNoteSource source = JournalingNoteSource.open(excel.getPath())) {
+            NoteRow row = source.getCreditRows().iterator().next();
+            assertEquals(12.5, row.getDouble(5));
+            assertEquals("Yes\tNo", row.getString(6));
+        }
+    }
+
+    @Test
+    void journalOfAnotherWorkbookIsMovedAside() throws Exception {
+        File excel = workbook();
+        File journal = new File(excel.getPath() + ".journal");
+        Files.write(journal.toPath(), "#journal\t1\t2\nC\t1\tn5=12.5\ts6=Yes\t.\n".getBytes(StandardCharsets.UTF_8));
+
+        try (JournalingNoteSource source = JournalingNoteSource.open(excel.getPath())) {
+            assertEquals(0, source.getReplayedCount());
+        }
+        assertEquals(List.of("#journal\t1\t2", "C\t1\tn5=12.5\ts6=Yes\t."),
+                Files.readAllLines(new File(journal.getPath() + ".stale").toPath(), StandardCharsets.UTF_8));
+        assertEquals(List.of(header(excel)), Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8));
+    }
+
+    private List<String> reopenAndFinishCreditRow2(File excel, File journal) throws IOException {
+        try (JournalingNoteSource source = JournalingNoteSource.open(excel.getPath())) {
+            assertEquals(1, source.getReplayedCount());
+            for (NoteRow row : source.getCreditRows()) {
+                if (row.getRowNum() != 2) continue;
+                row.setNumeric(5, 99.0);
+                row.setString(6, "Yes");
+                source.creditRowDone(row);
+            }
+        }
+        return Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private File journal(File excel, String... entries) throws IOException {
+        File journal = new File(excel.getPath() + ".journal");
+        StringBuilder text = new StringBuilder(header(excel)).append('\n');
+        for (String entry : entries) text.append(entry);
+        Files.write(journal.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        return journal;
+    }
+
+    private static String header(File excel) {
+        return "#journal\t" + excel.length() + "\t" + excel.lastModified();
+    }
+
+    private File workbook() throws IOException {
+        File file = new File(dir, "notes.xlsx");
+        try (Workbook wb = new XSSFWorkbook()) {
+            wb.createSheet("Main").createRow(0).createCell(0).setCellValue("Debit Note No.");
+            Sheet credit = wb.createSheet("CreditNoteDetails");
+            Row header = credit.createRow(0);
+            header.createCell(0).setCellValue("Debit Note No.");
+            header.createCell(5).setCellValue("Net Premium Payable To You");
+            header.createCell(6).setCellValue("Processed");
+            for (int r = 1; r <= 3; r++) credit.createRow(r).createCell(0).setCellValue("DN-" + r);
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                wb.write(out);
+            }
+        }
+        return file;
+    }
+}
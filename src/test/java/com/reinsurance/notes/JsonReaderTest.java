@@ -0,0 +1,69 @@
+package com.reinsurance.notes;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonReaderTest {
+
+    @Test
+    void parsesRequestBody() {
+        Object value = JsonReader.parse("{\"debitNoteNo\": \"DN-1\", \"sumInsured\": 1.5e6, \"share\": -2,"
+                + " \"flag\": true, \"none\": null, \"credits\": [{\"reinsurerName\": \"Swiss \\\"Re\\\" \\u00e9\"}, []]}");
+        Map<?, ?> map = (Map<?, ?>) value;
+        assertEquals(List.of("debitNoteNo", "sumInsured", "share", "flag", "none", "credits"), List.copyOf(map.keySet()));
+        assertEquals("DN-1", map.get("debitNoteNo"));
+        assertEquals(1.5e6, map.get("sumInsured"));
+        assertEquals(-2.0, map.get("share"));
+        assertEquals(Boolean.TRUE, map.get("flag"));
+        assertNull(map.get("none"));
+        List<?> credits = (List<?>) map.get("credits");
+        assertEquals("Swiss \"Re\" é", ((Map<?, ?>) credits.get(0)).get("reinsurerName"));
+        assertEquals(List.of(), credits.get(1));
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        for (String bad : new String[] {"", "{", "{\"a\" 1}", "[1,]", "\"open", "{\"a\": 1} x", "nul", "1.2.3", "\"\\q\""}) {
+            assertThrows(IllegalArgumentException.class, () -> JsonReader.parse(bad), bad);
+        }
+    }
+
+    @Test
+    void nestingIsCapped() {
+        assertEquals(List.of(), deepest(JsonReader.parse(nested(JsonReader.MAX_DEPTH))));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> JsonReader.parse(nested(JsonReader.MAX_DEPTH + 1)));
+        assertTrue(e.getMessage().startsWith("Nested deeper than"), e.getMessage());
+        // far beyond what the stack would take: still a plain 400-style error, not a StackOverflowError
+        assertThrows(IllegalArgumentException.class, () -> JsonReader.parse(nested(1_000_000)));
+    }
+
+    @Test
+    void depthIsPerPathNotPerDocument() {
+        String wide = "[" + String.join(",", Collections.nCopies(1000, nested(JsonReader.MAX_DEPTH - 1))) + "]";
+        assertEquals(1000, ((List<?>) JsonReader.parse(wide)).size());
+    }
+
+    private static String nested(int levels) {
+        char[] open = new char[levels];
+        char[] close = new char[levels];
+        Arrays.fill(open, '[');
+        Arrays.fill(close, ']');
+        return new String(open) + new String(close);
+    }
+
+    private static Object deepest(Object value) {
+        while (value instanceof List && !((List<?>) value).isEmpty()) value = ((List<?>) value).get(0);
+        return value;
+    }
+}
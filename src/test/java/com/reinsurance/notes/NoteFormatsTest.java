@@ -0,0 +1,110 @@
+package com.reinsurance.notes;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/** Every method against the {@code String.format}/{@code replaceAll} call it replaces. */
+class NoteFormatsTest {
+
+    private Locale saved;
+
+    @BeforeEach
+    void useUsLocale() {
+        saved = Locale.getDefault(Locale.Category.FORMAT);
+        Locale.setDefault(Locale.Category.FORMAT, Locale.US);
+    }
+
+    @AfterEach
+    void restoreLocale() {
+        Locale.setDefault(Locale.Category.FORMAT, saved);
+    }
+
+    @Test
+    void tiesRoundHalfUpOnTheDecimalForm() {
+        // binary values just below the tie: Formatter still rounds up, like BigDecimal.valueOf
+        for (double v : new double[] {1.005, 2.675, 1.115, 0.125, 0.015, 1234567.845, 8.345, 10.005, 0.005}) {
+            assertMoney(v);
+            assertMoney(-v);
+        }
+        assertEquals("1.01", NoteFormats.money(1.005));
+        assertEquals("2.68", NoteFormats.money(2.675));
+    }
+
+    @Test
+    void edgeValues() {
+        for (double v : new double[] {0.0, -0.0, -0.001, 0.004999, 999.995, 999_999.995, 1e11 - 0.01, 1e11, 1e15,
+                Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY}) {
+            assertMoney(v);
+        }
+        assertEquals("-0.00", NoteFormats.money(-0.0));
+        assertEquals("100,000,000,000.00", NoteFormats.money(1e11));
+    }
+
+    @Test
+    void randomAmountsMatchFormatter() {
+        SplittableRandom random = new SplittableRandom(2026);
+        for (int i = 0; i < 200_000; i++) {
+            double v;
+            switch (i % 4) {
+                case 0:  v = random.nextInt(-1_000_000_000, 1_000_000_000) / 1000.0; break; // on and near ties
+                case 1:  v = random.nextDouble(-1e10, 1e10); break;
+                case 2:  v = random.nextLong(-100_000_000_000L, 100_000_000_000L) / 100.0 + 0.005; break;
+                default: v = random.nextDouble(0, 100); break;
+            }
+            assertMoney(v);
+        }
+    }
+
+    @Test
+    void otherLocalesFallBackToFormatter() {
+        Locale.setDefault(Locale.Category.FORMAT, Locale.GERMANY);
+        assertEquals(String.format("%,.2f", 1234567.5), NoteFormats.money(1234567.5));
+        assertEquals("1.234.567,50", NoteFormats.money(1234567.5));
+        assertEquals(String.format("%.2f%%", 12.5), NoteFormats.percent(12.5));
+    }
+
+    @Test
+    void cellText() {
+        for (double v : new double[] {0.0, -0.0, 1.0, -42.0, 9_999_999.0, 1e7, 12.5, 1e-5, 123456789012.0, Double.NaN}) {
+            assertEquals(String.valueOf(v), NoteFormats.cellText(v), String.valueOf(v));
+        }
+    }
+
+    @Test
+    void namesMatchTheirRegex() {
+        for (String name : new String[] {"DN-2026/001", "CN 7.1_a", "Swiss Re", "Zürich-Re", "plain_name-1", "", "a\tb"}) {
+            assertEquals(name.replaceAll("[^a-zA-Z0-9-_]", "_"), NoteFormats.fileName(name), name);
+            assertEquals(name.replaceAll("[^a-zA-Z0-9-_\\.]", "_"), NoteFormats.fileNameWithDots(name), name);
+            assertEquals(name.replaceAll("[^a-zA-Z0-9]", ""), NoteFormats.alphanumeric(name), name);
+        }
+        String clean = "DN-001_a";
+        assertSame(clean, NoteFormats.fileName(clean));
+    }
+
+    @Test
+    void fallbackDebitNoteNoMatchesFormatter() {
+        for (int row : new int[] {0, 1, 9, 10, 99, 100, 999, 1000, 123456, Integer.MAX_VALUE}) {
+            assertEquals("DN-" + String.format("%03d", row), NoteFormats.fallbackDebitNoteNo(row), String.valueOf(row));
+        }
+    }
+
+    @Test
+    void documentDate() {
+        assertEquals(java.time.LocalDate.now().format(NoteFormats.DOCUMENT_DATE), NoteFormats.today());
+    }
+
+    private static void assertMoney(double v) {
+        String label = Double.toString(v);
+        assertEquals(String.format("%,.2f", v), NoteFormats.money(v), label);
+        assertEquals("EUR " + String.format("%,.2f", v), NoteFormats.amount("EUR", v), label);
+        assertEquals(String.format("%.2f%%", v), NoteFormats.percent(v), label);
+        assertEquals(String.format("%.2f%% of 100%%", v), NoteFormats.shareOf100(v), label);
+    }
+}
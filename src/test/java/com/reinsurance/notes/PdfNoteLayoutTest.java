@@ -0,0 +1,146 @@
+package com.reinsurance.notes;
+
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.parser.PdfTextExtractor;
+import org.apache.poi.wp.usermodel.HeaderFooterType;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTcPr;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.STMerge;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class PdfNoteLayoutTest {
+
+    // fits on one line across the table, wraps in a third of it
+    private static final String REMARK = "Premium payable within sixty days of inception of the risk";
+
+    @TempDir
+    File dir;
+
+    @Test
+    void mergedCellsKeepTheirSpans() throws IOException {
+        byte[] pdf = render(template(false), "Zürich Re", "Main Street 1");
+        String text = text(pdf);
+
+        assertTrue(text.contains(REMARK), text);
+        assertTrue(text.contains("value-0") && text.contains("value-1") && text.contains("value-13"), text);
+        assertEquals(1, text.split("Insured", -1).length - 1, text); // the vertical merge is drawn once
+        assertTrue(text.contains("Zürich Re"), text);
+        assertFalse(embedsAFont(pdf)); // Latin-1 text stays in Helvetica
+    }
+
+    @Test
+    void namesOutsideLatin1AreDrawn() throws IOException {
+        String name = "Ωμέγα Αντασφαλιστική";
+        assumeTrue(PdfFonts.EMBEDDED != null && PdfFonts.EMBEDDED.covers(name), "no TrueType font with Greek installed");
+
+        byte[] pdf = render(template(false), name, "Стамбул");
+        String text = text(pdf);
+        assertTrue(embedsAFont(pdf));
+        assertTrue(text.contains(name), text);
+        assertTrue(text.contains("Стамбул"), text);
+    }
+
+    @Test
+    void templateWithAPageHeaderIsRefused() throws IOException {
+        PdfNoteLayout layout = PdfNoteLayout.fromTemplate(template(true), "header.docx");
+        PdfFonts.Unsupported e = assertThrows(PdfFonts.Unsupported.class,
+                () -> layout.render(slots(), true, "Re", null, new ByteArrayOutputStream()));
+        assertEquals("template header.docx has a page header", e.getMessage());
+    }
+
+    @Test
+    void notesThePdfFontCannotShowAreWrittenAsDocx() throws IOException {
+        String name = "東京海上日動";
+        assumeFalse(PdfFonts.EMBEDDED != null && PdfFonts.EMBEDDED.covers(name));
+        File templateFile = new File(dir, "credit.docx");
+        Files.write(templateFile.toPath(), template(false));
+        NoteTemplate template = NoteTemplate.forPath(templateFile.getPath());
+
+        String folder = new File(dir, "out").getPath() + File.separator;
+        try (NoteOutput output = new NoteOutput(folder, false, NoteOutput.Format.PDF, new RunMetrics())) {
+            output.write("CN-1", "CN-1", 1, template, slots(), true, name, null);
+            output.write("CN-2", "CN-2", 1, template, slots(), true, "Latin Re", null);
+        }
+        assertTrue(new File(folder, "CN-1.docx").isFile());
+        assertFalse(new File(folder, "CN-1.pdf").exists());
+        assertTrue(new File(folder, "CN-2.pdf").isFile());
+        assertFalse(new File(folder, "CN-2.docx").exists());
+    }
+
+    private static byte[] render(byte[] template, String toName, String toAddress) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PdfNoteLayout.fromTemplate(template, "credit.docx").render(slots(), true, toName, toAddress, out);
+        return out.toByteArray();
+    }
+
+    private static String[] slots() {
+        String[] slots = new String[NoteTemplate.SLOT_ROWS];
+        for (int r = 0; r < slots.length; r++) slots[r] = "value-" + r;
+        return slots;
+    }
+
+    private static String text(byte[] pdf) throws IOException {
+        PdfReader reader = new PdfReader(pdf);
+        try {
+            StringBuilder sb = new StringBuilder();
+            PdfTextExtractor extractor = new PdfTextExtractor(reader);
+            for (int p = 1; p <= reader.getNumberOfPages(); p++) sb.append(extractor.getTextFromPage(p)).append('\n');
+            return sb.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static boolean embedsAFont(byte[] pdf) {
+        return new String(pdf, StandardCharsets.ISO_8859_1).contains("/FontFile2");
+    }
+
+    /**
+     * A credit note template: "To," paragraph, then 14 slot rows of label, colon and value, where the
+     * label "Insured" is merged down over rows 0 and 1, and a last row with one cell across all columns.
+     */
+    private static byte[] template(boolean header) throws IOException {
+        try (XWPFDocument doc = new XWPFDocument()) {
+            doc.createParagraph().createRun().setText("To,");
+            XWPFTable table = doc.createTable(NoteTemplate.SLOT_ROWS + 1, 3);
+            for (int r = 0; r < NoteTemplate.SLOT_ROWS; r++) {
+                table.getRow(r).getCell(0).setText(r == 0 ? "Insured" : r == 1 ? "" : "Label " + r);
+                table.getRow(r).getCell(1).setText(":");
+            }
+            tcPr(table.getRow(0).getCell(0)).addNewVMerge().setVal(STMerge.RESTART);
+            tcPr(table.getRow(1).getCell(0)).addNewVMerge();
+
+            XWPFTableCell last = table.getRow(NoteTemplate.SLOT_ROWS).getCell(0);
+            last.setText(REMARK);
+            tcPr(last).addNewGridSpan().setVal(BigInteger.valueOf(3));
+            table.getRow(NoteTemplate.SLOT_ROWS).removeCell(2);
+            table.getRow(NoteTemplate.SLOT_ROWS).removeCell(1);
+
+            if (header) doc.createHeader(HeaderFooterType.DEFAULT).createParagraph().createRun().setText("ACME Re Brokers");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            doc.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static CTTcPr tcPr(XWPFTableCell cell) {
+        return cell.getCTTc().isSetTcPr() ? cell.getCTTc().getTcPr() : cell.getCTTc().addNewTcPr();
+    }
+}
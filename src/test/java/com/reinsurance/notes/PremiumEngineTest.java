@@ -0,0 +1,112 @@
+package com.reinsurance.notes;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** The engine against the per-row formulas of the original generator, compared bit for bit. */
+class PremiumEngineTest {
+
+    private static final int ROWS = 10_000;
+
+    @Test
+    void mainRowsMatchTheOriginalFormulas() {
+        SplittableRandom random = new SplittableRandom(42);
+        PremiumEngine.MainBatch b = new PremiumEngine.MainBatch(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            b.sumInsured[i] = random.nextInt(1, 50_000_000) + random.nextInt(100) / 100.0;
+            b.cedentRate[i] = random.nextInt(1, 500) / 100.0;
+            b.reinsRate[i]  = random.nextBoolean() ? 0 : random.nextInt(1, 500) / 100.0;
+            b.share[i]      = random.nextInt(1, 10_000) / 100.0;
+            b.brokerage[i]  = random.nextInt(0, 3_000) / 100.0;
+            b.cedingPct[i]  = random.nextInt(0, 4_000) / 100.0;
+        }
+        PremiumEngine.calculateMain(b, 0, ROWS);
+
+        for (int i = 0; i < ROWS; i++) {
+            double SI = b.sumInsured[i], cedentRate = b.cedentRate[i], mainReinsRate = b.reinsRate[i];
+            double share = b.share[i], brokerage = b.brokerage[i], cedingCommPct = b.cedingPct[i];
+
+            double grossPremiumCedent   = SI * (cedentRate / 100);
+            double sharePremiumCedent   = grossPremiumCedent * (share / 100);
+            double effectiveReinsRateMain = (mainReinsRate > 0) ? mainReinsRate : cedentRate;
+            double grossPremiumReinsMain  = SI * (effectiveReinsRateMain / 100);
+            double sharePremiumReinsMain  = grossPremiumReinsMain * (share / 100);
+            double cedingCommissionAmtMain = sharePremiumCedent * (cedingCommPct / 100);
+            double grossBrokerageMain      = sharePremiumReinsMain * (brokerage / 100);
+            double netBrokerageMain        = grossBrokerageMain / 2.0;
+            double netPremiumFromYou = sharePremiumCedent - cedingCommissionAmtMain;
+            double netPremiumToYou   = sharePremiumReinsMain - netBrokerageMain - cedingCommissionAmtMain;
+
+            assertEquals(grossPremiumCedent, b.grossPremiumCedent[i]);
+            assertEquals(sharePremiumCedent, b.sharePremiumCedent[i]);
+            assertEquals(grossPremiumReinsMain, b.grossPremiumReins[i]);
+            assertEquals(sharePremiumReinsMain, b.sharePremiumReins[i]);
+            assertEquals(cedingCommissionAmtMain, b.cedingCommission[i]);
+            assertEquals(grossBrokerageMain, b.grossBrokerage[i]);
+            assertEquals(netBrokerageMain, b.netBrokerage[i]);
+            assertEquals(netPremiumFromYou, b.netPremiumFromYou[i]);
+            assertEquals(netPremiumToYou, b.netPremiumToYou[i]);
+        }
+    }
+
+    @Test
+    void creditRowsMatchTheOriginalFormulas() {
+        SplittableRandom random = new SplittableRandom(7);
+        PremiumEngine.CreditBatch b = new PremiumEngine.CreditBatch(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            b.sumInsured[i]    = random.nextInt(1, 50_000_000) + random.nextInt(100) / 100.0;
+            b.cedentRate[i]    = random.nextInt(1, 500) / 100.0;
+            b.mainReinsRate[i] = random.nextBoolean() ? 0 : random.nextInt(1, 500) / 100.0;
+            b.mainBrokerage[i] = random.nextInt(0, 3_000) / 100.0;
+            b.mainCedingPct[i] = random.nextInt(0, 4_000) / 100.0;
+            b.reinsRate[i]     = random.nextBoolean() ? 0 : random.nextInt(1, 500) / 100.0;
+            b.share[i]         = random.nextInt(1, 10_000) / 100.0;
+            b.brokerage[i]     = random.nextBoolean() ? 0 : random.nextInt(1, 3_000) / 100.0;
+            b.cedingPct[i]     = random.nextBoolean() ? 0 : random.nextInt(1, 4_000) / 100.0;
+        }
+        PremiumEngine.calculateCredit(b, 0, ROWS);
+
+        for (int i = 0; i < ROWS; i++) {
+            double SI = b.sumInsured[i], cedentRate = b.cedentRate[i], mainReinsRate = b.mainReinsRate[i];
+            double brokerage = b.mainBrokerage[i], cedingCommPct = b.mainCedingPct[i];
+            double creditRowRate = b.reinsRate[i], reinsurerShare = b.share[i];
+            double creditRowBrok = b.brokerage[i], creditRowCedPct = b.cedingPct[i];
+
+            double effectiveReinsRate = (creditRowRate  > 0) ? creditRowRate  : ((mainReinsRate > 0) ? mainReinsRate : cedentRate);
+            double effectiveBrokerage = (creditRowBrok  > 0) ? creditRowBrok  : brokerage;
+            double effectiveCedingPct = (creditRowCedPct> 0) ? creditRowCedPct: cedingCommPct;
+            double gpReins    = SI * (effectiveReinsRate / 100);
+            double spReins    = gpReins * (reinsurerShare / 100);
+            double ccAmt      = spReins * (effectiveCedingPct / 100);
+            double gb         = spReins * (effectiveBrokerage / 100);
+            double nb         = gb / 2.0;
+            double netPayable = spReins - nb - ccAmt;
+
+            assertEquals(effectiveReinsRate, b.effectiveReinsRate[i]);
+            assertEquals(gpReins, b.grossPremium[i]);
+            assertEquals(spReins, b.sharePremium[i]);
+            assertEquals(ccAmt, b.cedingCommission[i]);
+            assertEquals(gb, b.grossBrokerage[i]);
+            assertEquals(nb, b.netBrokerage[i]);
+            assertEquals(netPayable, b.netPayable[i]);
+        }
+    }
+
+    @Test
+    void rangeLeavesOtherRowsUntouched() {
+        PremiumEngine.MainBatch b = new PremiumEngine.MainBatch(3);
+        for (int i = 0; i < 3; i++) {
+            b.sumInsured[i] = 1_000_000;
+            b.cedentRate[i] = 1.5;
+            b.share[i] = 50;
+        }
+        PremiumEngine.calculateMain(b, 1, 2);
+        assertEquals(0.0, b.grossPremiumCedent[0]);
+        assertEquals(15_000.0, b.grossPremiumCedent[1]);
+        assertEquals(7_500.0, b.sharePremiumCedent[1]);
+        assertEquals(0.0, b.grossPremiumCedent[2]);
+    }
+}
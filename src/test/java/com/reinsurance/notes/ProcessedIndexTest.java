@@ -0,0 +1,144 @@
+package com.reinsurance.notes;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcessedIndexTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void unchangedChangedAndUnknownAcrossRuns() throws Exception {
+        String workbook = new File(dir, "notes.xlsx").getPath();
+        ProcessedIndex first = ProcessedIndex.load(workbook);
+        Row row = new Row("DN-1", "16-Oct-2026", 1_000_000.0);
+        long hash = first.hashMain(row, "16-Oct-2026");
+        assertEquals(ProcessedIndex.Status.UNKNOWN, first.checkMain("DN-1", hash));
+        first.recordMain("DN-1", hash);
+        first.save();
+
+        ProcessedIndex second = ProcessedIndex.load(workbook);
+        assertEquals(ProcessedIndex.Status.UNCHANGED, second.checkMain("DN-1", hash));
+        assertEquals(ProcessedIndex.Status.UNKNOWN, second.checkMain("DN-2", hash));
+
+        ProcessedIndex third = ProcessedIndex.load(workbook);
+        long edited = third.hashMain(new Row("DN-1", "16-Oct-2026", 2_000_000.0), "16-Oct-2026");
+        assertEquals(ProcessedIndex.Status.CHANGED, third.checkMain("DN-1", edited));
+        assertEquals(1, third.getReissuedCount());
+    }
+
+    @Test
+    void hashUsesTheDateTheNoteIsIssuedWith() {
+        ProcessedIndex index = newIndex();
+        Row blank = new Row("DN-1", "", 1_000_000.0);
+        Row dated = new Row("DN-1", "16-Oct-2026", 1_000_000.0);
+        // the auto-date filled into a blank row hashes like the same date typed in
+        assertEquals(index.hashMain(dated, "16-Oct-2026"), index.hashMain(blank, "16-Oct-2026"));
+        assertNotEquals(index.hashMain(dated, "16-Oct-2026"), index.hashMain(dated, "17-Oct-2026"));
+    }
+
+    @Test
+    void duplicateNoteNumbersAreNotIndexed() throws Exception {
+        String workbook = new File(dir, "notes.xlsx").getPath();
+        ProcessedIndex index = ProcessedIndex.load(workbook);
+        assertEquals(ProcessedIndex.Status.UNKNOWN, index.checkMain("DN-1", 1L));
+        index.recordMain("DN-1", 1L);
+        assertEquals(ProcessedIndex.Status.DUPLICATE, index.checkMain("DN-1", 2L));
+        index.recordMain("DN-1", 2L);
+        assertEquals(ProcessedIndex.Status.UNKNOWN, index.checkMain("DN-2", 3L));
+        index.recordMain("DN-2", 3L);
+        index.save();
+
+        List<String> lines = Files.readAllLines(new File(workbook + ".idx").toPath(), StandardCharsets.UTF_8);
+        assertEquals(List.of("#workbook\t0\t0", "M\tDN-2\t3"), lines);
+    }
+
+    @Test
+    void flagsAreTrustedWhileTheWorkbookIsAsSaved() throws Exception {
+        File workbook = new File(dir, "notes.xlsx");
+        Files.write(workbook.toPath(), new byte[] {1, 2, 3});
+        assertFalse(ProcessedIndex.load(workbook.getPath()).isWorkbookUnchanged(), "no index yet");
+
+        ProcessedIndex first = ProcessedIndex.load(workbook.getPath());
+        first.recordMain("DN-1", 1L);
+        first.save();
+        assertTrue(ProcessedIndex.load(workbook.getPath()).isWorkbookUnchanged());
+
+        Files.write(workbook.toPath(), new byte[] {1, 2, 3, 4}); // edited after the run
+        ProcessedIndex second = ProcessedIndex.load(workbook.getPath());
+        assertFalse(second.isWorkbookUnchanged());
+        assertEquals(ProcessedIndex.Status.UNCHANGED, second.checkMain("DN-1", 1L));
+    }
+
+    @Test
+    void unflaggedCreditsAreFoundByTheirFlagsAlone() {
+        Map<String,Integer> hdr = Map.of("debit note no.", 0, "credit note no.", 1, "processed", 2);
+        Row flagged = new Row("DN-1", "CN-1", "Yes");
+        Row pending = new Row("DN-1", "CN-2", "");
+        assertFalse(ProcessedIndex.hasUnflaggedCredits(null, hdr));
+        assertFalse(ProcessedIndex.hasUnflaggedCredits(List.of(flagged), hdr));
+        assertTrue(ProcessedIndex.hasUnflaggedCredits(List.of(flagged, pending), hdr));
+    }
+
+    @Test
+    void clearedCreditFlagIsPendingEvenWhenUnchanged() {
+        ProcessedIndex index = newIndex();
+        Map<String,Integer> hdr = Map.of("debit note no.", 0, "credit note no.", 1, "processed", 2);
+        Row flagged = new Row("DN-1", "CN-1", "Yes");
+        Row cleared = new Row("DN-1", "CN-1", "");
+        long hash = index.hashCredit(flagged, hdr, 7L);
+        index.recordCredit("CN-1", hash);
+
+        assertEquals(false, index.hasPendingCredits(List.of(flagged), hdr, "DN-1", 7L));
+        assertEquals(true, index.hasPendingCredits(List.of(cleared), hdr, "DN-1", 7L));
+    }
+
+    private ProcessedIndex newIndex() {
+        try {
+            return ProcessedIndex.load(new File(dir, "fresh.xlsx").getPath());
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /** In-memory row: strings as given, numbers as {@link NoteFormats#cellText}. */
+    private static final class Row implements NoteRow {
+        private final Object[] cells;
+
+        Row(Object... cells) {
+            this.cells = Arrays.copyOf(cells, 22);
+        }
+
+        @Override public int getRowNum()      { return 1; }
+        @Override public int getLastCellNum() { return cells.length; }
+        @Override public boolean isEmpty()    { return false; }
+
+        @Override
+        public String getString(int idx) {
+            Object v = cells[idx];
+            if (v instanceof Double) return NoteFormats.cellText((Double) v);
+            return v == null ? "" : (String) v;
+        }
+
+        @Override
+        public double getDouble(int idx) {
+            return cells[idx] instanceof Double ? (Double) cells[idx] : 0.0;
+        }
+
+        @Override public void setString(int idx, String val)  { cells[idx] = val; }
+        @Override public void setNumeric(int idx, double val) { cells[idx] = val; }
+    }
+}
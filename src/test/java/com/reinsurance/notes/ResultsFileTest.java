@@ -0,0 +1,158 @@
+package com.reinsurance.notes;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.DoubleBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultsFileTest {
+
+    // more than two blocks, the last one partly filled
+    private static final int LINES = 2 * ResultsExport.BLOCK_ROWS + 123;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void columnarRoundTrip() throws IOException {
+        File file = new File(dir, "results.bin");
+        double[][] expected = write(file);
+        assertFalse(new File(file.getPath() + ".part").exists());
+
+        try (ResultsFile results = ResultsFile.open(file)) {
+            assertEquals(LINES, results.rowCount());
+            assertEquals(3, results.blockCount());
+            assertArrayEquals(ResultsExport.COLUMNS, results.columns());
+            assertEquals("EUR", results.meta("currency"));
+            assertEquals("book.xlsx", results.meta("workbook"));
+
+            int line = 0;
+            for (int b = 0; b < results.blockCount(); b++) {
+                ResultsFile.Block block = results.block(b);
+                for (int i = 0; i < block.rows(); i++, line++) {
+                    assertEquals(line % 4 == 0, block.isDebit(i));
+                    assertEquals(noteNo(line), block.noteNo(i));
+                    assertEquals(debitNoteNo(line), block.debitNoteNo(i));
+                    for (int c = 0; c < ResultsExport.COLUMNS.length; c++) {
+                        assertEquals(Double.doubleToRawLongBits(expected[line][c]),
+                                Double.doubleToRawLongBits(block.value(c, i)), "line " + line + " column " + c);
+                    }
+                }
+                DoubleBuffer column = block.column(results.columnIndex("netPremiumToYou"));
+                assertEquals(block.rows(), column.remaining());
+            }
+            assertEquals(LINES, line);
+
+            for (int c = 0; c < ResultsExport.COLUMNS.length; c++) {
+                double sum = 0;
+                for (double[] values : expected) if (!Double.isNaN(values[c])) sum += values[c];
+                assertEquals(sum, results.sum(ResultsExport.COLUMNS[c]), Math.abs(sum) * 1e-12);
+            }
+            assertThrows(IllegalArgumentException.class, () -> results.columnIndex("noSuchColumn"));
+        }
+    }
+
+    @Test
+    void csvRoundTrip() throws IOException {
+        File file = new File(dir, "results.csv");
+        double[][] expected = write(file);
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals("kind,noteNo,debitNoteNo," + String.join(",", ResultsExport.COLUMNS), lines.get(0));
+        assertEquals(LINES + 1, lines.size());
+        for (int line = 0; line < LINES; line++) {
+            String[] fields = lines.get(line + 1).split(",", -1);
+            assertEquals(line % 4 == 0 ? "D" : "C", fields[0]);
+            assertEquals(noteNo(line), fields[1]);
+            assertEquals(debitNoteNo(line), fields[2]);
+            for (int c = 0; c < ResultsExport.COLUMNS.length; c++) {
+                String field = fields[3 + c];
+                if (Double.isNaN(expected[line][c])) {
+                    assertEquals("", field);
+                } else {
+                    assertEquals(expected[line][c], Double.parseDouble(field));
+                }
+            }
+        }
+    }
+
+    @Test
+    void unfinishedExportIsDeleted() throws IOException {
+        File file = new File(dir, "results.bin");
+        try (ResultsExport export = ResultsExport.open(file, "book.xlsx", "USD")) {
+            export.debit("DN-1", 1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        }
+        assertFalse(file.exists());
+        assertFalse(new File(file.getPath() + ".part").exists());
+    }
+
+    @Test
+    void dumpPrintsSumsAndLines() throws IOException {
+        File file = new File(dir, "results.bin");
+        try (ResultsExport export = ResultsExport.open(file, "book.xlsx", "USD")) {
+            export.debit("DN-1", 1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+            export.credit("CN-1", "DN-1", 3, 1.5, 2, 3, 4.25);
+            export.credit("CN,2", "DN-1", 3, 1.5, 2, 3, 4.75);
+            export.finish();
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ResultsFile.dump(file, true, new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        String out = bytes.toString(StandardCharsets.UTF_8);
+        assertTrue(out.contains("Lines: 3 (1 debit, 2 credit) in 1 blocks"), out);
+        assertTrue(out.contains("  netPremiumToYou = 19.0"), out);
+        assertTrue(out.contains("  netPremiumFromYou = 9.0"), out);
+        assertTrue(out.contains("D,DN-1,DN-1,1.0,2.0,3.0,4.0,5.0,6.0,7.0,8.0,9.0,10.0"), out);
+        assertTrue(out.contains("C,\"CN,2\",DN-1,,,3.0,1.5,,2.0,3.0,,,4.75"), out);
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        File file = new File(dir, "not-results.bin");
+        Files.write(file.toPath(), new byte[64]);
+        assertThrows(IOException.class, () -> ResultsFile.open(file));
+    }
+
+    /** One debit line followed by three credit lines, with random amounts; returns the values written. */
+    private static double[][] write(File file) throws IOException {
+        Random random = new Random(17);
+        double[][] expected = new double[LINES][];
+        try (ResultsExport export = ResultsExport.open(file, "book.xlsx", "EUR")) {
+            for (int line = 0; line < LINES; line++) {
+                double[] v = new double[ResultsExport.COLUMNS.length];
+                for (int c = 0; c < v.length; c++) v[c] = (random.nextDouble() - 0.1) * 1e6;
+                if (line % 4 == 0) {
+                    export.debit(noteNo(line), v[0], v[1], v[2], v[3], v[4], v[5], v[6], v[7], v[8], v[9]);
+                } else {
+                    export.credit(noteNo(line), debitNoteNo(line), v[2], v[3], v[5], v[6], v[9]);
+                    v[0] = v[1] = v[4] = v[7] = v[8] = Double.NaN;
+                }
+                expected[line] = v;
+            }
+            export.finish();
+        }
+        return expected;
+    }
+
+    private static String noteNo(int line) {
+        return (line % 4 == 0 ? "DN-" : "CN-") + line + (line % 7 == 0 ? "-Ü" : "");
+    }
+
+    private static String debitNoteNo(int line) {
+        return noteNo(line - line % 4);
+    }
+}
@@ -0,0 +1,38 @@
+package com.reinsurance.notes;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RunOptionsTest {
+
+    @Test
+    void watchRejectsJournalAndIndex() {
+        assertRejected("--watch=inbox", "--journal");
+        assertRejected("--watch=inbox", "--index");
+        assertEquals("inbox", RunOptions.parse(new String[] {"--watch=inbox", "--threads=2"}).watchDir);
+    }
+
+    @Test
+    void validateRejectsOptionsThatWrite() {
+        for (String other : new String[] {"--export", "--export=out.csv", "--archive", "--index", "--journal"}) {
+            assertRejected("--validate", other);
+        }
+        assertEquals(4, RunOptions.parse(new String[] {"--validate", "--threads=4"}).threads);
+        assertRejected("--dump-results=results.bin", "--validate");
+    }
+
+    @Test
+    void currencyIsThreeLetters() {
+        assertEquals("EUR", RunOptions.parseCurrency(" eur "));
+        assertEquals("CHF", RunOptions.parse(new String[] {"--currency=chf"}).currency);
+        for (String bad : new String[] {"", "EU", "EURO", "E1R", "€UR", "ÄBC", "aß", "us d"}) {
+            assertThrows(IllegalArgumentException.class, () -> RunOptions.parseCurrency(bad), bad);
+        }
+    }
+
+    private static void assertRejected(String... args) {
+        assertThrows(IllegalArgumentException.class, () -> RunOptions.parse(args));
+    }
+}
@@ -0,0 +1,85 @@
+package com.reinsurance.notes;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StreamingNoteSourceTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void rerunKeepsFlagsAndDatesFromTheResultsWorkbook() throws Exception {
+        File input = workbook();
+        String results = new File(dir, "notes-results.xlsx").getPath();
+
+        try (StreamingNoteSource source = StreamingNoteSource.open(input.getPath(), results)) {
+            source.forEachMainRow((r, row) -> {
+                if (r != 1) return;
+                row.setString(1, "16-Oct-2026");
+                row.setNumeric(11, 1000.0);
+                row.setString(21, "Yes");
+                source.mainRowDone(row);
+            });
+            source.save();
+        }
+
+        List<String> flags = new ArrayList<>();
+        List<String> dates = new ArrayList<>();
+        try (StreamingNoteSource source = StreamingNoteSource.open(input.getPath(), results)) {
+            source.forEachMainRow((r, row) -> {
+                flags.add(row.getString(21));
+                dates.add(row.getString(1));
+            });
+            source.save(); // nothing processed: row 1 is carried forward
+        }
+        assertEquals(List.of("Yes", ""), flags);
+        assertEquals(List.of("16-Oct-2026", ""), dates);
+
+        try (Workbook wb = new XSSFWorkbook(new FileInputStream(results))) {
+            Sheet main = wb.getSheet("Main");
+            assertEquals(2, main.getPhysicalNumberOfRows());
+            Row header = main.getRow(0);
+            assertEquals("Source Row", header.getCell(22).getStringCellValue(), "results columns 11-21 stay free");
+            assertNull(header.getCell(11));
+            Row row = main.getRow(1);
+            assertEquals(1000.0, row.getCell(11).getNumericCellValue());
+            assertEquals("Yes", row.getCell(21).getStringCellValue());
+            assertEquals(2.0, row.getCell(22).getNumericCellValue());
+        }
+    }
+
+    // main sheet with an 11-column header (inputs only) and two rows, plus an empty credit sheet
+    private File workbook() throws IOException {
+        File file = new File(dir, "notes.xlsx");
+        try (Workbook wb = new XSSFWorkbook()) {
+            Sheet main = wb.createSheet("Main");
+            Row header = main.createRow(0);
+            for (int c = 0; c <= 10; c++) header.createCell(c).setCellValue("Col " + c);
+            for (int r = 1; r <= 2; r++) {
+                Row row = main.createRow(r);
+                row.createCell(0).setCellValue("DN-" + r);
+                row.createCell(6).setCellValue(1_000_000.0);
+            }
+            wb.createSheet("CreditNoteDetails").createRow(0).createCell(0).setCellValue("Debit Note No.");
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                wb.write(out);
+            }
+        }
+        return file;
+    }
+}
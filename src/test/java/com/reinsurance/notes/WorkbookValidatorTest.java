@@ -0,0 +1,127 @@
+package com.reinsurance.notes;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkbookValidatorTest {
+
+    private static final String[] CREDIT_HEADER = {
+            "Debit Note No.", "Credit Note No.", "Reinsured", "Reinsurer Name", "Reinsurer Address",
+            "Reinsurer Share (%)", "Reinsurance Rate (%)", "Brokerage (%)", "Ceding Commission (%)",
+            "Fac Premium 100%", "Share Premium", "Ceding Commission (Amount)", "Gross Brokerage",
+            "Net Premium Payable To You", "Processed"
+    };
+
+    @TempDir
+    File dir;
+
+    @Test
+    void processedRowsAreNotChecked() throws Exception {
+        List<String> report = validate(1);
+
+        // rows 2 and 4 are processed: incomplete, not a number and a duplicate of each other, none reported
+        assertEquals(List.of(
+                "Severity,Sheet,Row,Column,Message",
+                "ERROR,Main,5,Debit Note No.,Duplicate debit note no. (first on row 3); the later note overwrites the earlier file",
+                "ERROR,Main,6,Debit Note No.,Duplicate debit note no. (first on row 2); the later note overwrites the earlier file",
+                "WARNING,CreditNoteDetails,3,Debit Note No.,Debit note DN-1 is already processed; a run issues this row only with --index",
+                "ERROR,CreditNoteDetails,5,Credit Note No.,Duplicate credit note no. CN-2 (first on row 4); the later note overwrites the earlier file"
+        ), report);
+    }
+
+    @Test
+    void reportDoesNotDependOnTheThreadCount() throws Exception {
+        assertEquals(validate(1), validate(4));
+        assertEquals(validate(1), validate(WorkerPools.VIRTUAL));
+    }
+
+    @Test
+    void runReportsErrors() throws Exception {
+        File clean = new File(dir, "clean.xlsx");
+        try (Workbook wb = new XSSFWorkbook()) {
+            mainRow(wb.createSheet("Main"), 1, "DN-1", 1_000_000.0, "");
+            creditSheet(wb);
+            write(wb, clean);
+        }
+        RunOptions opts = RunOptions.parse(new String[] {"--validate=" + new File(dir, "clean.csv")});
+        assertTrue(WorkbookValidator.run(opts, clean.getPath()));
+
+        opts = RunOptions.parse(new String[] {"--validate=" + new File(dir, "report.csv")});
+        assertFalse(WorkbookValidator.run(opts, workbook().getPath()));
+    }
+
+    private List<String> validate(int threads) throws Exception {
+        File report = new File(dir, "report-" + threads + ".csv");
+        RunOptions opts = RunOptions.parse(new String[] {"--validate=" + report});
+        opts.threads = threads;
+        WorkbookValidator.run(opts, workbook().getPath());
+        return Files.readAllLines(report.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private File workbook() throws IOException {
+        File file = new File(dir, "notes.xlsx");
+        try (Workbook wb = new XSSFWorkbook()) {
+            Sheet main = wb.createSheet("Main");
+            mainRow(main, 1, "DN-1", 0, "Yes");           // processed and incomplete
+            mainRow(main, 2, "DN-2", 1_000_000.0, "");
+            mainRow(main, 3, "DN-1", 0, "Processed");     // processed duplicate of a processed row
+            main.getRow(3).createCell(7).setCellValue("n/a");
+            mainRow(main, 4, "DN-2", 1_000_000.0, "");    // pending duplicate of a pending row
+            mainRow(main, 5, "DN-1", 1_000_000.0, "");    // pending duplicate of a processed row
+
+            Sheet credit = creditSheet(wb);
+            creditRow(credit, 1, "DN-1", "CN-1", "abc", "Yes"); // processed: the bad share is not reported
+            creditRow(credit, 2, "DN-1", "CN-1B", "5", "");
+            creditRow(credit, 3, "DN-2", "CN-2", "5", "Yes");
+            creditRow(credit, 4, "DN-2", "CN-2", "5", "");      // pending duplicate of a processed row
+            write(wb, file);
+        }
+        return file;
+    }
+
+    private static void mainRow(Sheet main, int r, String debitNoteNo, double sumInsured, String processed) {
+        Row row = main.createRow(r);
+        row.createCell(0).setCellValue(debitNoteNo);
+        if (sumInsured != 0) row.createCell(6).setCellValue(sumInsured);
+        row.createCell(7).setCellValue(0.5);
+        row.createCell(9).setCellValue(50.0);
+        row.createCell(21).setCellValue(processed);
+    }
+
+    private static Sheet creditSheet(Workbook wb) {
+        Sheet credit = wb.createSheet("CreditNoteDetails");
+        Row header = credit.createRow(0);
+        for (int c = 0; c < CREDIT_HEADER.length; c++) header.createCell(c).setCellValue(CREDIT_HEADER[c]);
+        return credit;
+    }
+
+    private static void creditRow(Sheet credit, int r, String debitNoteNo, String creditNoteNo, String share, String processed) {
+        Row row = credit.createRow(r);
+        row.createCell(0).setCellValue(debitNoteNo);
+        row.createCell(1).setCellValue(creditNoteNo);
+        row.createCell(3).setCellValue("Re " + r);
+        row.createCell(5).setCellValue(share);
+        row.createCell(14).setCellValue(processed);
+    }
+
+    private static void write(Workbook wb, File file) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            wb.write(out);
+        }
+    }
+}